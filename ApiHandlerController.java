@@ -1,5 +1,8 @@
 package com.cestc.dc.apihandler.controller;
 
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeNode;
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeRequest;
+import com.cestc.dc.apihandler.deptTree.FuzzySearchTree;
 import com.cestc.dc.apihandler.service.*;
 import com.cestc.dc.apihandler.signature.SignatureAnnotation;
 import com.cestc.dc.apihandler.signature.SignatureParam;
@@ -17,11 +20,20 @@ import com.cestc.dc.sso.service.SsoService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Set;
 
@@ -58,6 +70,11 @@ public class ApiHandlerController {
     @Autowired
     private DepartService departService;
 
+    /**
+     * 流式返回的写出缓冲区大小
+     */
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
     /**
      * 校验用户是否存在该权限
      *
@@ -272,9 +289,67 @@ public class ApiHandlerController {
     @PostMapping("/fuzzySearchTree")
     @ApiOperation(value = "模糊查询部门或者人员")
     @ApiLog(type = 2)
-    public ResultVO<DepartTreeNode> fuzzySearchTree(@RequestBody SignatureParam<String> signatureParam) {
+    public ResponseEntity<?> fuzzySearchTree(@RequestBody SignatureParam<String> signatureParam,
+                                             @RequestParam(required = false) Integer limit,
+                                             @RequestParam(required = false) Integer maxDistance,
+                                             HttpServletRequest request) {
         String keyword = signatureParam.getData();
-        DepartTreeNode node = departService.fuzzySearchTree(keyword);
+        if (StringUtils.isBlank(keyword)) {
+            // 全量部门树直接返回预先序列化的字节，未变化时返回 304
+            return departService.getFullTreeResponse().toResponseEntity(request);
+        }
+        int size = limit == null || limit <= 0 ? FuzzySearchTree.DEFAULT_SEARCH_LIMIT
+                : Math.min(limit, FuzzySearchTree.MAX_SEARCH_LIMIT);
+        // 容错查询需要显式开启，默认只做子串匹配
+        int distance = maxDistance == null || maxDistance <= 0 ? 0
+                : Math.min(maxDistance, FuzzySearchTree.MAX_EDIT_DISTANCE);
+        DepartTreeNode node = departService.fuzzySearchTree(keyword, size, distance);
+        return ResponseEntity.ok(ResultVO.success(node));
+    }
+
+    /**
+     * 模糊查询部门或者人员，按 NDJSON 逐行返回命中的部门、人员及其上级部门路径，不在内存中拼装部门树，
+     * 适合命中较多或导出的场景；最后一行为汇总
+     */
+    @SignatureAnnotation
+    @PostMapping("/fuzzySearchStream")
+    @ApiOperation(value = "模糊查询部门或者人员（NDJSON 逐行返回）")
+    @ApiLog(type = 2)
+    public void fuzzySearchStream(@RequestBody SignatureParam<String> signatureParam,
+                                  @RequestParam(required = false) Integer limit,
+                                  @RequestParam(required = false) Integer maxDistance,
+                                  HttpServletResponse response) throws IOException {
+        String keyword = signatureParam.getData();
+        if (StringUtils.isBlank(keyword)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        int size = limit == null || limit <= 0 ? FuzzySearchTree.DEFAULT_SEARCH_LIMIT
+                : Math.min(limit, FuzzySearchTree.MAX_STREAM_LIMIT);
+        int distance = maxDistance == null || maxDistance <= 0 ? 0
+                : Math.min(maxDistance, FuzzySearchTree.MAX_EDIT_DISTANCE);
+        response.setContentType("application/x-ndjson;charset=UTF-8");
+        // 固定大小的写出缓冲区，写满或每写出一批行时发送给客户端
+        Writer writer = new BufferedWriter(
+                new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        departService.fuzzySearchStream(keyword, size, distance, writer);
+        writer.flush();
+    }
+
+    /**
+     * 按需加载部门树：返回部门及指定深度内的下级部门，每个部门的直属人员分页返回，
+     * 前端展开节点时再按部门编号加载下一层
+     */
+    @SignatureAnnotation
+    @PostMapping("/getDeptSubtree")
+    @ApiOperation(value = "按需加载部门树")
+    @ApiLog(type = 2)
+    public ResultVO<DeptSubtreeNode> getDeptSubtree(@RequestBody SignatureParam<DeptSubtreeRequest> signatureParam) {
+        DeptSubtreeRequest request = signatureParam.getData();
+        DeptSubtreeNode node = departService.getDeptSubtree(request == null ? new DeptSubtreeRequest() : request);
+        if (node == null) {
+            return ResultVO.failed("部门不存在");
+        }
         return ResultVO.success(node);
     }
 }
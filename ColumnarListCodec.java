@@ -0,0 +1,522 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 同类对象列表的紧凑二进制编码，用于写入 Redis 的部门、人员等大列表。
+ * <p>
+ * 按列存储：每个字段一列，列头记录字段名与类型，解码时按字段名对应，字段增删不会读错列。
+ * <ul>
+ *     <li>字符串列：列内字典去重，每行只写字典下标（varint），重复的上级部门编号、部门名称只存一次；</li>
+ *     <li>整数、日期列：zigzag varint，日期写与上一行的差值；</li>
+ *     <li>空值：每列一个位图。</li>
+ * </ul>
+ * 只支持基本类型及其包装类、String、Date、BigDecimal、枚举、字符串集合字段，
+ * 类中有其他类型的字段时 {@link #tryCreate} 返回 null，调用方继续使用原来的序列化方式。
+ *
+ * @param <E> 列表元素类型
+ */
+@Slf4j
+public class ColumnarListCodec<E> implements RedisNearCache.Codec<List<E>> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte STRING = 1;
+
+    private static final byte LONG = 2;
+
+    private static final byte INT = 3;
+
+    private static final byte SHORT = 4;
+
+    private static final byte BYTE = 5;
+
+    private static final byte BOOLEAN = 6;
+
+    private static final byte DOUBLE = 7;
+
+    private static final byte FLOAT = 8;
+
+    private static final byte DATE = 9;
+
+    private static final byte DECIMAL = 10;
+
+    private static final byte ENUM = 11;
+
+    private static final byte STRING_SET = 12;
+
+    private static final byte STRING_LIST = 13;
+
+    private final Constructor<E> constructor;
+
+    private final List<Column> columns;
+
+    private ColumnarListCodec(Constructor<E> constructor, List<Column> columns) {
+        this.constructor = constructor;
+        this.columns = columns;
+    }
+
+    /**
+     * 为指定类型创建编码器
+     *
+     * @param type 列表元素类型
+     * @return 编码器，类型没有无参构造器或含有不支持的字段时为 null
+     */
+    public static <E> ColumnarListCodec<E> tryCreate(Class<E> type) {
+        try {
+            Constructor<E> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            List<Column> columns = new ArrayList<>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                        continue;
+                    }
+                    byte kind = kindOf(field);
+                    if (kind == 0) {
+                        log.warn("{}的字段{}类型为{}，不支持紧凑编码", type.getName(), field.getName(), field.getType());
+                        return null;
+                    }
+                    field.setAccessible(true);
+                    columns.add(new Column(field, kind));
+                }
+            }
+            return new ColumnarListCodec<>(constructor, columns);
+        } catch (NoSuchMethodException e) {
+            log.warn("{}没有无参构造器，不支持紧凑编码", type.getName());
+            return null;
+        }
+    }
+
+    private static byte kindOf(Field field) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            return STRING;
+        } else if (type == long.class || type == Long.class) {
+            return LONG;
+        } else if (type == int.class || type == Integer.class) {
+            return INT;
+        } else if (type == short.class || type == Short.class) {
+            return SHORT;
+        } else if (type == byte.class || type == Byte.class) {
+            return BYTE;
+        } else if (type == boolean.class || type == Boolean.class) {
+            return BOOLEAN;
+        } else if (type == double.class || type == Double.class) {
+            return DOUBLE;
+        } else if (type == float.class || type == Float.class) {
+            return FLOAT;
+        } else if (type == Date.class) {
+            return DATE;
+        } else if (type == BigDecimal.class) {
+            return DECIMAL;
+        } else if (type.isEnum()) {
+            return ENUM;
+        } else if ((type == Set.class || type == List.class) && isStringElement(field.getGenericType())) {
+            return type == Set.class ? STRING_SET : STRING_LIST;
+        }
+        return 0;
+    }
+
+    private static boolean isStringElement(Type genericType) {
+        return genericType instanceof ParameterizedType
+                && ((ParameterizedType) genericType).getActualTypeArguments()[0] == String.class;
+    }
+
+    /**
+     * 一列：对应的字段及编码类型
+     */
+    private static final class Column {
+
+        final Field field;
+
+        final String name;
+
+        final byte kind;
+
+        Column(Field field, byte kind) {
+            this.field = field;
+            this.name = field.getName();
+            this.kind = kind;
+        }
+    }
+
+    @Override
+    public byte[] encode(List<E> rows) {
+        Output out = new Output(rows.size() * 16 + 64);
+        out.writeByte(FORMAT_VERSION);
+        out.writeVarint(rows.size());
+        out.writeVarint(columns.size());
+        try {
+            for (Column column : columns) {
+                out.writeString(column.name);
+                out.writeByte(column.kind);
+                Object[] values = new Object[rows.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = column.field.get(rows.get(i));
+                }
+                encodeColumn(out, column.kind, values);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void encodeColumn(Output out, byte kind, Object[] values) {
+        if (kind != STRING && kind != ENUM) {
+            // 字符串列的空值记在字典下标里，其余列单独写空值位图
+            writeNulls(out, values);
+        }
+        switch (kind) {
+            case STRING:
+            case ENUM:
+                writeDictionary(out, values);
+                break;
+            case STRING_SET:
+            case STRING_LIST:
+                List<Object> elements = new ArrayList<>();
+                for (Object value : values) {
+                    if (value != null) {
+                        Collection<?> collection = (Collection<?>) value;
+                        out.writeVarint(collection.size());
+                        elements.addAll(collection);
+                    }
+                }
+                writeDictionary(out, elements.toArray());
+                break;
+            case BOOLEAN:
+                boolean[] flags = new boolean[values.length];
+                for (int i = 0; i < values.length; i++) {
+                    flags[i] = Boolean.TRUE.equals(values[i]);
+                }
+                out.writeBits(flags);
+                break;
+            case DOUBLE:
+            case FLOAT:
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+                    }
+                }
+                break;
+            case DATE:
+                long previous = 0;
+                for (Object value : values) {
+                    if (value != null) {
+                        long time = ((Date) value).getTime();
+                        out.writeZigzag(time - previous);
+                        previous = time;
+                    }
+                }
+                break;
+            case DECIMAL:
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeString(((BigDecimal) value).toString());
+                    }
+                }
+                break;
+            default:
+                for (Object value : values) {
+                    if (value != null) {
+                        out.writeZigzag(((Number) value).longValue());
+                    }
+                }
+        }
+    }
+
+    private static void writeNulls(Output out, Object[] values) {
+        boolean[] nulls = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            nulls[i] = values[i] == null;
+        }
+        out.writeBits(nulls);
+    }
+
+    /**
+     * 字典编码：先写去重后的字符串，再逐行写下标加一，0 表示 null
+     */
+    private static void writeDictionary(Output out, Object[] values) {
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        int[] indexes = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                String value = values[i] instanceof Enum ? ((Enum<?>) values[i]).name() : (String) values[i];
+                indexes[i] = dictionary.computeIfAbsent(value, k -> dictionary.size() + 1);
+            }
+        }
+        out.writeVarint(dictionary.size());
+        dictionary.keySet().forEach(out::writeString);
+        for (int index : indexes) {
+            out.writeVarint(index);
+        }
+    }
+
+    @Override
+    public List<E> decode(byte[] bytes) {
+        Input in = new Input(bytes);
+        if (in.readByte() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("不支持的编码版本");
+        }
+        int rowCount = in.readVarint();
+        int columnCount = in.readVarint();
+        Map<String, Column> columnsByName = new HashMap<>(columns.size() * 2);
+        columns.forEach(column -> columnsByName.put(column.name, column));
+        try {
+            List<E> rows = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                rows.add(constructor.newInstance());
+            }
+            for (int c = 0; c < columnCount; c++) {
+                String name = in.readString();
+                byte kind = in.readByte();
+                Object[] values = decodeColumn(in, kind, rowCount);
+                Column column = columnsByName.get(name);
+                // 编码后字段已删除或改了类型时丢弃这一列
+                if (column == null || column.kind != kind) {
+                    continue;
+                }
+                for (int i = 0; i < rowCount; i++) {
+                    if (values[i] != null) {
+                        column.field.set(rows.get(i), convert(column, values[i]));
+                    }
+                }
+            }
+            return rows;
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object[] decodeColumn(Input in, byte kind, int rowCount) {
+        if (kind == STRING || kind == ENUM) {
+            return readDictionary(in, rowCount);
+        }
+        Object[] values = new Object[rowCount];
+        boolean[] nulls = in.readBits(rowCount);
+        switch (kind) {
+            case STRING_SET:
+            case STRING_LIST:
+                int[] sizes = new int[rowCount];
+                int total = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    if (!nulls[i]) {
+                        sizes[i] = in.readVarint();
+                        total += sizes[i];
+                    }
+                }
+                Object[] elements = readDictionary(in, total);
+                int next = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    if (!nulls[i]) {
+                        Collection<Object> collection =
+                                kind == STRING_SET ? new LinkedHashSet<>() : new ArrayList<>(sizes[i]);
+                        for (int j = 0; j < sizes[i]; j++) {
+                            collection.add(elements[next++]);
+                        }
+                        values[i] = collection;
+                    }
+                }
+                return values;
+            case BOOLEAN:
+                boolean[] flags = in.readBits(rowCount);
+                for (int i = 0; i < rowCount; i++) {
+                    values[i] = nulls[i] ? null : flags[i];
+                }
+                return values;
+            default:
+                long previous = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    if (nulls[i]) {
+                        continue;
+                    }
+                    if (kind == DOUBLE || kind == FLOAT) {
+                        values[i] = Double.longBitsToDouble(in.readLong());
+                    } else if (kind == DATE) {
+                        previous += in.readZigzag();
+                        values[i] = new Date(previous);
+                    } else if (kind == DECIMAL) {
+                        values[i] = new BigDecimal(in.readString());
+                    } else {
+                        values[i] = in.readZigzag();
+                    }
+                }
+                return values;
+        }
+    }
+
+    private static Object[] readDictionary(Input in, int count) {
+        String[] dictionary = new String[in.readVarint() + 1];
+        for (int i = 1; i < dictionary.length; i++) {
+            dictionary[i] = in.readString();
+        }
+        Object[] values = new Object[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = dictionary[in.readVarint()];
+        }
+        return values;
+    }
+
+    /**
+     * 将解码出的通用值转换成字段的实际类型
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object convert(Column column, Object value) {
+        Class<?> type = column.field.getType();
+        switch (column.kind) {
+            case INT:
+                return ((Long) value).intValue();
+            case SHORT:
+                return ((Long) value).shortValue();
+            case BYTE:
+                return ((Long) value).byteValue();
+            case FLOAT:
+                return ((Double) value).floatValue();
+            case ENUM:
+                return Enum.valueOf((Class<? extends Enum>) type, (String) value);
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * 只追加的字节缓冲
+     */
+    private static final class Output {
+
+        private byte[] buffer;
+
+        private int size;
+
+        Output(int capacity) {
+            this.buffer = new byte[Math.max(capacity, 16)];
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+
+        void writeByte(int value) {
+            ensure(1);
+            buffer[size++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[size++] = (byte) value;
+        }
+
+        void writeZigzag(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeLong(long value) {
+            ensure(8);
+            for (int i = 0; i < 8; i++) {
+                buffer[size++] = (byte) (value >>> (i * 8));
+            }
+        }
+
+        void writeBits(boolean[] bits) {
+            ensure((bits.length + 7) / 8);
+            for (int i = 0; i < bits.length; i += 8) {
+                int b = 0;
+                for (int j = 0; j < 8 && i + j < bits.length; j++) {
+                    if (bits[i + j]) {
+                        b |= 1 << j;
+                    }
+                }
+                buffer[size++] = (byte) b;
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+    }
+
+    /**
+     * 顺序读取的字节缓冲
+     */
+    private static final class Input {
+
+        private final byte[] buffer;
+
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        int readVarint() {
+            return (int) readVarlong();
+        }
+
+        long readVarlong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        long readZigzag() {
+            long value = readVarlong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value |= (buffer[position++] & 0xFFL) << (i * 8);
+            }
+            return value;
+        }
+
+        boolean[] readBits(int count) {
+            boolean[] bits = new boolean[count];
+            for (int i = 0; i < count; i += 8) {
+                int b = buffer[position++];
+                for (int j = 0; j < 8 && i + j < count; j++) {
+                    bits[i + j] = (b & (1 << j)) != 0;
+                }
+            }
+            return bits;
+        }
+
+        String readString() {
+            int length = readVarint();
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
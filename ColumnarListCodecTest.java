@@ -0,0 +1,321 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * {@link ColumnarListCodec} 的往返测试，以及与 JDK 序列化（RedisTemplate 默认的值序列化方式）的大小、解码耗时对比
+ */
+@Slf4j
+class ColumnarListCodecTest {
+
+    enum Level {
+        ROOT,
+        BRANCH,
+        LEAF
+    }
+
+    /**
+     * 覆盖编码器支持的全部字段类型
+     */
+    static class AllTypes implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        String text;
+        long primitiveLong;
+        Long boxedLong;
+        int primitiveInt;
+        Integer boxedInt;
+        short primitiveShort;
+        Short boxedShort;
+        byte primitiveByte;
+        Byte boxedByte;
+        boolean primitiveBoolean;
+        Boolean boxedBoolean;
+        double primitiveDouble;
+        Double boxedDouble;
+        float primitiveFloat;
+        Float boxedFloat;
+        Date date;
+        BigDecimal decimal;
+        Level level;
+        Set<String> tags;
+        List<String> aliases;
+        transient String ignored;
+    }
+
+    /**
+     * 与 AllTypes 同名的部分字段，并多出一个新字段，模拟编码后类有增删字段
+     */
+    static class Subset {
+
+        String text;
+        Integer boxedInt;
+        List<String> aliases;
+        String added;
+    }
+
+    /**
+     * 与部门列表相近的数据，用于大小与耗时对比
+     */
+    static class Dept implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        String bmdm;
+        String sjbmdm;
+        String bmmc;
+        String status;
+        Integer sort;
+        Date updateTime;
+    }
+
+    static class Unsupported {
+
+        Map<String, String> attributes;
+    }
+
+    private final ColumnarListCodec<AllTypes> codec = ColumnarListCodec.tryCreate(AllTypes.class);
+
+    @Test
+    void roundTripsEveryFieldType() {
+        Random random = new Random(42);
+        List<AllTypes> rows = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            rows.add(randomRow(random, i));
+        }
+        assertRoundTrip(rows);
+    }
+
+    @Test
+    void roundTripsNullsAndEdgeValues() {
+        AllTypes allNull = new AllTypes();
+        AllTypes edges = new AllTypes();
+        edges.text = "";
+        edges.primitiveLong = Long.MIN_VALUE;
+        edges.boxedLong = Long.MAX_VALUE;
+        edges.primitiveInt = Integer.MIN_VALUE;
+        edges.boxedInt = Integer.MAX_VALUE;
+        edges.primitiveShort = Short.MIN_VALUE;
+        edges.boxedShort = Short.MAX_VALUE;
+        edges.primitiveByte = Byte.MIN_VALUE;
+        edges.boxedByte = Byte.MAX_VALUE;
+        edges.primitiveBoolean = true;
+        edges.boxedBoolean = false;
+        edges.primitiveDouble = Double.NaN;
+        edges.boxedDouble = -0.0;
+        edges.primitiveFloat = Float.MIN_VALUE;
+        edges.boxedFloat = Float.NEGATIVE_INFINITY;
+        edges.date = new Date(0);
+        edges.decimal = new BigDecimal("-12345678901234567890.000123");
+        edges.level = Level.LEAF;
+        edges.tags = Collections.emptySet();
+        edges.aliases = Collections.emptyList();
+        AllTypes before = new AllTypes();
+        before.date = new Date(-86_400_000L);
+        assertRoundTrip(Arrays.asList(allNull, edges, allNull, before));
+    }
+
+    @Test
+    void roundTripsNonAsciiStrings() {
+        AllTypes row = new AllTypes();
+        row.text = "财务部（华东）·第二党支部 𠀀 🙂";
+        row.tags = new LinkedHashSet<>(Arrays.asList("中文", "Ünïcödé", "", "日本語"));
+        row.aliases = Arrays.asList("张三", null, "张三");
+        assertRoundTrip(Arrays.asList(row, row));
+    }
+
+    @Test
+    void roundTripsEmptyList() {
+        assertRoundTrip(Collections.emptyList());
+    }
+
+    @Test
+    void skipsTransientFields() {
+        AllTypes row = new AllTypes();
+        row.ignored = "not encoded";
+        assertNull(codec.decode(codec.encode(Collections.singletonList(row))).get(0).ignored);
+    }
+
+    @Test
+    void matchesColumnsByName() {
+        Random random = new Random(7);
+        List<AllTypes> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(randomRow(random, i));
+        }
+        byte[] bytes = codec.encode(rows);
+        List<Subset> decoded = ColumnarListCodec.tryCreate(Subset.class).decode(bytes);
+        assertEquals(rows.size(), decoded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(rows.get(i).text, decoded.get(i).text);
+            assertEquals(rows.get(i).boxedInt, decoded.get(i).boxedInt);
+            assertEquals(rows.get(i).aliases, decoded.get(i).aliases);
+            assertNull(decoded.get(i).added);
+        }
+    }
+
+    @Test
+    void rejectsUnsupportedFieldTypes() {
+        assertNull(ColumnarListCodec.tryCreate(Unsupported.class));
+    }
+
+    @Test
+    void rejectsUnknownFormatVersion() {
+        byte[] bytes = codec.encode(Collections.singletonList(new AllTypes()));
+        bytes[0] = 99;
+        assertThrows(IllegalArgumentException.class, () -> codec.decode(bytes));
+    }
+
+    /**
+     * 2 万个部门：编码后大小应明显小于 JDK 序列化，解码耗时记录在日志中供对比
+     */
+    @Test
+    void comparesWithJdkSerialization() throws Exception {
+        List<Dept> depts = departments(20_000);
+        ColumnarListCodec<Dept> deptCodec = ColumnarListCodec.tryCreate(Dept.class);
+        byte[] columnar = deptCodec.encode(depts);
+        byte[] jdk = jdkSerialize(new ArrayList<>(depts));
+
+        long columnarNanos = medianDecodeNanos(() -> deptCodec.decode(columnar));
+        long jdkNanos = medianDecodeNanos(() -> jdkDeserialize(jdk));
+        log.info(
+                "部门 {} 个：紧凑编码 {} 字节，解码 {}us；JDK 序列化 {} 字节，解码 {}us",
+                depts.size(),
+                columnar.length,
+                TimeUnit.NANOSECONDS.toMicros(columnarNanos),
+                jdk.length,
+                TimeUnit.NANOSECONDS.toMicros(jdkNanos));
+
+        assertTrue(columnar.length * 2 < jdk.length, "紧凑编码应不到 JDK 序列化大小的一半");
+        List<Dept> decoded = deptCodec.decode(columnar);
+        for (int i = 0; i < depts.size(); i++) {
+            assertFieldsEqual(depts.get(i), decoded.get(i));
+        }
+    }
+
+    private void assertRoundTrip(List<AllTypes> rows) {
+        byte[] bytes = codec.encode(rows);
+        List<AllTypes> decoded = codec.decode(bytes);
+        assertEquals(rows.size(), decoded.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertFieldsEqual(rows.get(i), decoded.get(i));
+        }
+    }
+
+    private static AllTypes randomRow(Random random, int i) {
+        AllTypes row = new AllTypes();
+        boolean nulls = random.nextInt(4) == 0;
+        row.text = nulls ? null : "部门" + random.nextInt(50);
+        row.primitiveLong = random.nextLong();
+        row.boxedLong = nulls ? null : (long) random.nextInt();
+        row.primitiveInt = random.nextInt();
+        row.boxedInt = nulls ? null : random.nextInt(1000) - 500;
+        row.primitiveShort = (short) random.nextInt();
+        row.boxedShort = nulls ? null : (short) random.nextInt();
+        row.primitiveByte = (byte) random.nextInt();
+        row.boxedByte = nulls ? null : (byte) random.nextInt();
+        row.primitiveBoolean = random.nextBoolean();
+        row.boxedBoolean = nulls ? null : random.nextBoolean();
+        row.primitiveDouble = random.nextGaussian();
+        row.boxedDouble = nulls ? null : random.nextDouble() * 1e9;
+        row.primitiveFloat = random.nextFloat();
+        row.boxedFloat = nulls ? null : -random.nextFloat();
+        // 日期按差值编码，乱序和重复都要覆盖
+        row.date = nulls ? null : new Date(1_600_000_000_000L + random.nextInt(1_000_000) * 1000L - i);
+        row.decimal = nulls ? null : BigDecimal.valueOf(random.nextInt(), random.nextInt(6));
+        row.level = nulls ? null : Level.values()[random.nextInt(Level.values().length)];
+        if (!nulls) {
+            row.tags = new LinkedHashSet<>();
+            for (int k = random.nextInt(4); k > 0; k--) {
+                row.tags.add("标签" + random.nextInt(10));
+            }
+            row.aliases = new ArrayList<>();
+            for (int k = random.nextInt(3); k > 0; k--) {
+                row.aliases.add("alias" + random.nextInt(5));
+            }
+        }
+        return row;
+    }
+
+    private static List<Dept> departments(int count) {
+        Random random = new Random(1);
+        String[] words = {"财务", "人事", "信息", "技术", "市场", "运营", "法务", "审计", "后勤", "安全"};
+        String[] suffixes = {"部", "处", "科", "中心", "办公室"};
+        List<Dept> depts = new ArrayList<>(count);
+        long time = 1_680_000_000_000L;
+        for (int i = 0; i < count; i++) {
+            Dept dept = new Dept();
+            dept.bmdm = String.format("D%07d", i);
+            dept.sjbmdm = i == 0 ? null : String.format("D%07d", random.nextInt(Math.max(1, i / 8)));
+            dept.bmmc = words[random.nextInt(words.length)] + suffixes[random.nextInt(suffixes.length)];
+            dept.status = "1";
+            dept.sort = random.nextInt(100);
+            time += random.nextInt(60_000);
+            dept.updateTime = new Date(time);
+            depts.add(dept);
+        }
+        return depts;
+    }
+
+    private interface Decoder {
+
+        Object decode() throws Exception;
+    }
+
+    private static long medianDecodeNanos(Decoder decoder) throws Exception {
+        for (int i = 0; i < 5; i++) {
+            decoder.decode();
+        }
+        long[] samples = new long[11];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            decoder.decode();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[samples.length / 2];
+    }
+
+    private static byte[] jdkSerialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object jdkDeserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private static void assertFieldsEqual(Object expected, Object actual) {
+        for (Field field : expected.getClass().getDeclaredFields()) {
+            if (Modifier.isStatic(field.getModifiers()) || Modifier.isTransient(field.getModifiers())) {
+                continue;
+            }
+            try {
+                assertEquals(field.get(expected), field.get(actual), field.getName());
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
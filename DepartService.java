@@ -1,11 +1,16 @@
 package com.cestc.dc.apihandler.service;
 
 
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeNode;
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeRequest;
+import com.cestc.dc.apihandler.deptTree.FullTreeResponse;
 import com.cestc.dc.common.commonBean.ResultVO;
 import com.cestc.dc.repository.domain.entity.user.AsDepart;
 import com.cestc.dc.repository.domain.entity.user.DepartTreeNode;
 import com.cestc.dc.repository.domain.vo.DeptInfoVo;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -26,4 +31,44 @@ public interface DepartService {
      * @return 部门树根节点
      */
     DepartTreeNode fuzzySearchTree(String keyword);
+
+    /**
+     * 模糊查询部门或者人员，部门与人员命中各自按相关度排序并最多保留 limit 条
+     * @param keyword 查询的关键字
+     * @param limit 最大返回条数
+     * @return 部门树根节点
+     */
+    DepartTreeNode fuzzySearchTree(String keyword, int limit);
+
+    /**
+     * 模糊查询部门或者人员，子串命中不足 limit 条时补充编辑距离不超过 maxDistance 的结果，用于容错输错的 uid、拼音
+     * @param keyword 查询的关键字
+     * @param limit 最大返回条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @return 部门树根节点
+     */
+    DepartTreeNode fuzzySearchTree(String keyword, int limit, int maxDistance);
+
+    /**
+     * 模糊查询部门或者人员，按 NDJSON 逐行写出命中的部门、人员及其上级部门路径，不拼装部门树
+     * @param keyword 查询的关键字
+     * @param limit 部门与人员各自的最大条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @param writer 输出
+     * @throws IOException 写出失败
+     */
+    void fuzzySearchStream(String keyword, int limit, int maxDistance, Writer writer) throws IOException;
+
+    /**
+     * 按需加载部门树，返回部门及指定深度内的下级部门，每个部门的直属人员分页返回
+     * @param request 部门编号、加载深度与人员分页参数
+     * @return 部门节点，部门不存在时为 null
+     */
+    DeptSubtreeNode getDeptSubtree(DeptSubtreeRequest request);
+
+    /**
+     * 获取当前快照预先序列化的全量部门树响应
+     * @return 全量部门树响应
+     */
+    FullTreeResponse getFullTreeResponse();
 }
@@ -2,9 +2,18 @@ package com.cestc.dc.apihandler.service.impl;
 
 import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.collection.CollUtil;
-import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.cestc.dc.apihandler.deptTree.ColumnarListCodec;
+import com.cestc.dc.apihandler.deptTree.DeptHierarchyIndex;
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeNode;
+import com.cestc.dc.apihandler.deptTree.DeptSubtreeRequest;
+import com.cestc.dc.apihandler.deptTree.FullTreeResponse;
 import com.cestc.dc.apihandler.deptTree.FuzzySearchTree;
+import com.cestc.dc.apihandler.deptTree.OrgSearchEngine;
+import com.cestc.dc.apihandler.deptTree.OrgSearchSnapshot;
+import com.cestc.dc.apihandler.deptTree.OrgSearchSnapshotManager;
+import com.cestc.dc.apihandler.deptTree.RedisNearCache;
+import com.cestc.dc.apihandler.deptTree.SearchDiagnostics;
 import com.cestc.dc.apihandler.service.DepartService;
 import com.cestc.dc.common.commonBean.ResultVO;
 import com.cestc.dc.common.domain.ConstantCommon;
@@ -14,28 +23,25 @@ import com.cestc.dc.common.exception.CommonException;
 import com.cestc.dc.common.util.BeanCopierUtils;
 import com.cestc.dc.repository.common.RedisCommon;
 import com.cestc.dc.repository.dao.AsDepartMapper;
-import com.cestc.dc.repository.dao.UserPwdDao;
 import com.cestc.dc.repository.domain.entity.user.*;
 import com.cestc.dc.repository.domain.vo.DeptInfoVo;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.stereotype.Service;
 import tk.mybatis.mapper.entity.Example;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.*;
-import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
-import static com.cestc.dc.common.domain.ConstantCommon.DEPART_MAP;
 import static com.cestc.dc.common.domain.ConstantCommon.ROOT_DEPARTMENT_NUM;
 
 
@@ -51,17 +57,41 @@ public class DepartServiceImpl implements DepartService {
     private RedisCommon redisCommon;
 
     @Autowired
-    private UserPwdDao userPwdDao;
+    private RedisConnectionFactory redisConnectionFactory;
 
-    private long expireTime = 60 * 60;
+    @Autowired
+    private OrgSearchSnapshotManager snapshotManager;
 
-    private static FuzzySearchTree uidTree;
+    @Autowired
+    private OrgSearchEngine searchEngine;
 
-    private static FuzzySearchTree nameTree;
+    private long expireTime = 60 * 60;
 
-    private static FuzzySearchTree deptNameTree;
+    /**
+     * DEPT_DEPT_VO 的进程内副本，Redis 中版本号变化时才重新读取整份部门列表
+     */
+    private RedisNearCache<List<DeptPersonVO>> deptPersonVOCache;
 
-    private static DepartTreeNode fullTree;
+    /**
+     * 紧凑编码后的 DEPT_DEPT_VO 使用单独的键；原键仍按原格式同时写入，供其他模块读取
+     */
+    private static final String DEPT_DEPT_VO_COLUMNAR = ConstantCommon.DEPT_DEPT_VO + ":columnar";
+
+    @PostConstruct
+    public void initDeptPersonVOCache() {
+        ColumnarListCodec<DeptPersonVO> codec = ColumnarListCodec.tryCreate(DeptPersonVO.class);
+        deptPersonVOCache =
+                codec == null
+                        ? new RedisNearCache<>(
+                                redisCommon, ConstantCommon.DEPT_DEPT_VO, expireTime, this::loadDeptPersonVOs)
+                        : new RedisNearCache<>(
+                                redisCommon,
+                                DEPT_DEPT_VO_COLUMNAR,
+                                expireTime,
+                                this::loadDeptPersonVOsWithLegacyKey,
+                                codec,
+                                RedisNearCache.bytesTemplate(redisConnectionFactory));
+    }
 
     /**
      * 获取部门树
@@ -77,12 +107,7 @@ public class DepartServiceImpl implements DepartService {
 
     private List<DeptPersonVO> getDeptPersonVOs() {
         try {
-            String deKey = ConstantCommon.DEPT_DEPT_VO;
-            List<DeptPersonVO> res = redisCommon.get(deKey);
-            if (res == null) {
-                res = deptChildrenToRedis();
-            }
-            return res;
+            return deptPersonVOCache.get();
         } catch (NullPointerException e) {
             log.error("部门信息为空", e);
             throw new CommonException("无部门信息");
@@ -90,21 +115,32 @@ public class DepartServiceImpl implements DepartService {
     }
 
     public List<DeptPersonVO> deptChildrenToRedis() {
-        String deVo = ConstantCommon.DEPT_DEPT_VO;
-        if (redisCommon.exists(deVo)) {
-            redisCommon.remove(deVo);
-        }
+        return deptPersonVOCache.reload();
+    }
+
+    private List<DeptPersonVO> loadDeptPersonVOs() {
         Example deptEx = new Example(AsDepart.class);
         deptEx.createCriteria().andEqualTo(ConstantCommon.STATUS, StatusEnum.LIVE.getCode());
         List<AsDepart> asDeparts = departMapper.selectByExample(deptEx);
+        return asDeparts.stream().map(DeptPersonVO::new).collect(Collectors.toList());
+    }
 
-        List<DeptPersonVO> deptVos = asDeparts.stream().map(DeptPersonVO::new).collect(Collectors.toList());
-        redisCommon.set(deVo, deptVos, expireTime);
+    /**
+     * 从数据库加载部门列表，并按原格式写入 DEPT_DEPT_VO，其他模块仍直接读取该键
+     */
+    private List<DeptPersonVO> loadDeptPersonVOsWithLegacyKey() {
+        List<DeptPersonVO> deptVos = loadDeptPersonVOs();
+        redisCommon.set(ConstantCommon.DEPT_DEPT_VO, deptVos, expireTime);
         return deptVos;
     }
 
     @Override
     public Set<String> getDeptParents(String deptNum) {
+        //优先从快照中的部门索引沿上级指针获取，快照中还没有该部门时再逐级查找
+        DeptHierarchyIndex deptIndex = snapshotManager.get().getRecords().getDeptIndex();
+        if (deptIndex.contains(deptNum)) {
+            return new LinkedHashSet<>(deptIndex.getAncestors(deptNum));
+        }
         //获取部门的父级对应关系
         List<DeptPersonVO> deptTreeVos = getDeptPersonVOs();
         if (CollUtil.isEmpty(deptTreeVos)) {
@@ -135,8 +171,14 @@ public class DepartServiceImpl implements DepartService {
     public List<DeptInfoVo> getDeptInfo(List<String> deptNums) {
         List<DeptInfoVo> infos;
         try {
+            //快照构建完成后直接按部门编号从预先转换好的部门信息中取
+            OrgSearchSnapshot snapshot = snapshotManager.get();
+            if (snapshot != OrgSearchSnapshot.EMPTY) {
+                return snapshot.getRecords().findDeptInfos(deptNums);
+            }
             List<DeptPersonVO> deptTreeVos = getDeptPersonVOs();
-            List<DeptPersonVO> list = deptTreeVos.stream().filter(d -> deptNums.contains(d.getBmdm())).collect(Collectors.toList());
+            Set<String> deptNumSet = new HashSet<>(deptNums);
+            List<DeptPersonVO> list = deptTreeVos.stream().filter(d -> deptNumSet.contains(d.getBmdm())).collect(Collectors.toList());
             infos = BeanCopierUtils.copyList2List(list, DeptInfoVo.class, true);
         } catch (NullPointerException e) {
             log.error("获取部门信息失败：", e);
@@ -147,13 +189,18 @@ public class DepartServiceImpl implements DepartService {
 
 
     /**
-     * 获得部门所有子集部门集合
+     * 获得部门所有子集部门集合，优先从快照中的部门索引直接截取，快照中还没有该部门时再按子集字段逐级查找
      *
      * @param deptNum
      * @param bmChildren
      */
     @Override
     public void getBmChildren(String deptNum, Set<String> bmChildren, Map<String, AsDepart> departMap) {
+        DeptHierarchyIndex deptIndex = snapshotManager.get().getRecords().getDeptIndex();
+        if (deptIndex.contains(deptNum)) {
+            bmChildren.addAll(deptIndex.getDescendants(deptNum));
+            return;
+        }
 
         AsDepart asDepart = departMap.get(deptNum);
         if (BeanUtil.isNotEmpty(asDepart)) {
@@ -182,230 +229,100 @@ public class DepartServiceImpl implements DepartService {
      */
     @Override
     public DepartTreeNode fuzzySearchTree(String keyword) {
-        if (StringUtils.isBlank(keyword)) {
-            return fullTree;
-        }
-
-        Map<String, AsDepart> deptMap = getDeptMapFromCache();
-        Map<String, DepartTreeNode> deptTreeNodeMap = new HashMap<>();
-
-        List<DeptPersonVO> targetDepartments = getTargetDepartments(keyword, deptMap);
-        buildTreeWithTargetDept(deptMap, targetDepartments, deptTreeNodeMap);
-
-        List<UserVo> targetUsers = getTargetUsers(keyword);
-        buildTreeWithTargetUser(deptMap, deptTreeNodeMap, targetUsers);
-
-        log.info("deptTreeNodeMap:" + JSON.toJSONString(deptTreeNodeMap));
-        return deptTreeNodeMap.getOrDefault(ROOT_DEPARTMENT_NUM, new DepartTreeNode());
+        return fuzzySearchTree(keyword, FuzzySearchTree.DEFAULT_SEARCH_LIMIT);
     }
 
-    private void buildTreeWithTargetUser(
-            Map<String, AsDepart> deptMap,
-            Map<String, DepartTreeNode> deptTreeNodeMap,
-            List<UserVo> targetUsers) {
-        targetUsers.forEach(insertUserIntoDeptTree(deptMap, deptTreeNodeMap));
-    }
-
-    private void buildTreeWithTargetDept(
-            Map<String, AsDepart> deptMap,
-            List<DeptPersonVO> targetDepartments,
-            Map<String, DepartTreeNode> deptTreeNodeMap) {
-        if (CollectionUtils.isNotEmpty(targetDepartments)) {
-            targetDepartments.forEach(
-                    deptPersonVO ->
-                            constructPath(deptMap, deptTreeNodeMap, deptPersonVO.getBmdm()));
-            putUserInDepts(targetDepartments, deptTreeNodeMap);
-        }
+    /**
+     * 按需加载部门树，部门编号为空时从根部门开始；深度与人员条数超出范围时取默认值或上限
+     *
+     * @param request 部门编号、加载深度与人员分页参数
+     * @return 部门节点，部门不存在时为 null
+     */
+    @Override
+    public DeptSubtreeNode getDeptSubtree(DeptSubtreeRequest request) {
+        String deptCode =
+                StringUtils.isBlank(request.getDeptCode()) ? ROOT_DEPARTMENT_NUM : request.getDeptCode();
+        int depth =
+                request.getDepth() == null || request.getDepth() < 0
+                        ? DeptSubtreeRequest.DEFAULT_DEPTH
+                        : Math.min(request.getDepth(), DeptSubtreeRequest.MAX_DEPTH);
+        int userOffset =
+                request.getUserOffset() == null ? 0 : Math.max(request.getUserOffset(), 0);
+        int userLimit =
+                request.getUserLimit() == null || request.getUserLimit() < 0
+                        ? DeptSubtreeRequest.DEFAULT_USER_LIMIT
+                        : Math.min(request.getUserLimit(), DeptSubtreeRequest.MAX_USER_LIMIT);
+        return snapshotManager.get().getSubtree(deptCode, depth, userOffset, userLimit);
     }
 
-    private void putUserInDepts(
-            List<DeptPersonVO> targetDepartments, Map<String, DepartTreeNode> deptTreeNodeMap) {
-    List<String> targetDeptNames =
-            targetDepartments.stream()
-                    .map(DeptPersonVO::getBmdm)
-                    .collect(Collectors.toList());
-            Example example = new Example(AsUser.class);
-            example.createCriteria()
-                    .andEqualTo("status", String.valueOf(ConstantCommon.OPERATION_RESULT_FAILED))
-                    .andIn("departmentNumber", targetDeptNames);
-            List<UserPwd> usersFromTargetDept = userPwdDao.selectByExample(example);
-            usersFromTargetDept.parallelStream()
-                    .forEach(
-                            user -> {
-                                String deptCode = user.getDepartmentNumber();
-                                DepartTreeNode node = deptTreeNodeMap.get(deptCode);
-                                if (node == null) {
-                                    log.error("部门树节点缓存中找不到,deptCode:{},user:{}", deptCode, user);
-                                    return;
-                                }
-                                UserVo userVo = UserVo.from(user);
-                                node.addUser(userVo);
-                            });}
-
-    private List<UserVo> getTargetUsers(String keyword) {
-        Example userEx = new Example(UserPwd.class);
-        Example.Criteria criteria = userEx.createCriteria();
-        criteria.andEqualTo("status", String.valueOf(ConstantCommon.OPERATION_RESULT_FAILED));
-        if (StringUtils.isNotBlank(keyword)) {
-            // 如果keyword不为空，就模糊搜索
-            if (uidTree == null || nameTree == null) {
-                generateUserFuzzySearchTrees();
-            }
-            List<String> targetUid = uidTree.search(keyword);
-            List<String> targetName = nameTree.search(keyword);
-            if (targetUid.isEmpty() && targetName.isEmpty()) {
-                return Collections.emptyList();
-            }
-
-            Example.Criteria and = userEx.and();
-            if (!targetUid.isEmpty()) {
-                // 如果为空，tkmybatis会产生错误的sql语句
-                and.orIn("uid", targetUid);
-            }
-            if (!targetName.isEmpty()) {
-                and.orIn("displayName", targetName);
-            }
-        }
-        List<UserPwd> userPwds = userPwdDao.selectByExample(userEx);
-        List<UserVo> targetUsers =
-                userPwds.parallelStream().map(UserVo::from).collect(Collectors.toList());
-        log.info("targetUsers:" + targetUsers);
-        return targetUsers;
+    /**
+     * 获取当前快照预先序列化的全量部门树响应，快照发布时已完成序列化
+     *
+     * @return 全量部门树响应
+     */
+    @Override
+    public FullTreeResponse getFullTreeResponse() {
+        return snapshotManager.get().getFullTreeResponse();
     }
 
-    private void generateUserFuzzySearchTrees() {
-        long start = System.currentTimeMillis();
-        Example example = new Example(UserPwd.class);
-        example.createCriteria()
-                .andEqualTo("status", String.valueOf(ConstantCommon.OPERATION_RESULT_FAILED));
-        List<UserPwd> userPwdList = userPwdDao.selectByExample(example);
-        List<String> uids =
-                userPwdList.parallelStream().map(UserPwd::getUid).collect(Collectors.toList());
-        List<String> names =
-                userPwdList.parallelStream()
-                        .map(UserPwd::getDisplayName)
-                        .collect(Collectors.toList());
-        long dbTime = System.currentTimeMillis();
-        uidTree = new FuzzySearchTree(uids, false);
-        long uidTreeTime = System.currentTimeMillis();
-        nameTree = new FuzzySearchTree(names, true);
-        long nameTreeTime = System.currentTimeMillis();
-        log.info("dbTime:" + (dbTime - start));
-        log.info("uidTreeTime:" + (uidTreeTime - dbTime));
-        log.info("nameTreeTime:" + (nameTreeTime - uidTreeTime));
+    /**
+     * 模糊查询部门或者人员 如果keyword为空，返回全量；否则部门与人员命中各自最多保留 limit 条
+     *
+     * @param keyword 查询的关键字
+     * @param limit 最大返回条数
+     * @return 部门树根节点
+     */
+    @Override
+    public DepartTreeNode fuzzySearchTree(String keyword, int limit) {
+        return fuzzySearchTree(keyword, limit, 0);
     }
 
-    private List<DeptPersonVO> getTargetDepartments(String keyword, Map<String, AsDepart> deptMap) {
+    /**
+     * 模糊查询部门或者人员，子串命中不足 limit 条时补充编辑距离不超过 maxDistance 的结果
+     *
+     * @param keyword 查询的关键字
+     * @param limit 最大返回条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @return 部门树根节点
+     */
+    @Override
+    public DepartTreeNode fuzzySearchTree(String keyword, int limit, int maxDistance) {
+        // 整个请求只读取同一个快照；关键字为空时直接返回快照中预先拼装好的全量部门树，不会阻塞，也不会触发重建
+        OrgSearchSnapshot snapshot = searchEngine.getSnapshot();
         if (StringUtils.isBlank(keyword)) {
-            // 如果keyword为空，返回全量
-            return getDeptPersonVOs();
-        }
-        List<DeptPersonVO> targetDepartments;
-        // 只有当keyword包含中文时才搜索部门，否则只搜索人员
-        if (isContainChinese(keyword)) {
-            if (deptNameTree == null) {
-                generateDeptNameFuzzySearchTrees();
-            }
-            List<String> targetDeptName = deptNameTree.search(keyword);
-            if (targetDeptName.isEmpty()) {
-                return Collections.emptyList();
-            }
-            Example example = new Example(AsDepart.class);
-            Example.Criteria criteria = example.createCriteria();
-            criteria.andEqualTo(ConstantCommon.STATUS, StatusEnum.LIVE.getCode());
-            if (!targetDeptName.isEmpty()) {
-                criteria.andIn("bmmc", targetDeptName);
-            }
-            List<AsDepart> asDeparts = departMapper.selectByExample(example);
-            // 获取所有子部门
-            Set<String> deptChildrenAll = new HashSet<>();
-            asDeparts.forEach(
-                    asDepart -> {
-                        Set<String> deptChildren = new HashSet<>();
-                        String deptCode = asDepart.getBmdm();
-                        getBmChildren(deptCode, deptChildren, deptMap);
-                        if (CollUtil.isNotEmpty(deptChildren)) {
-                            deptChildrenAll.addAll(deptChildren);
-                        }
-                    });
-            // 将所有子部门加入到搜索结果中
-            Stream<AsDepart> childStream = deptChildrenAll.parallelStream().map(deptMap::get);
-            Stream<AsDepart> mergedStream = Stream.concat(asDeparts.parallelStream(), childStream);
-            targetDepartments =
-                    mergedStream
-                            .filter(Objects::nonNull)
-                            .distinct()
-                            .map(DeptPersonVO::new)
-                            .collect(Collectors.toList());
-        } else {
-            targetDepartments = Collections.emptyList();
-        }
-        log.info("targetDepartments:" + targetDepartments);
-        return targetDepartments;
-    }
-
-    /** 生成部门名称模糊搜索树 */
-    private void generateDeptNameFuzzySearchTrees() {
-        List<DeptPersonVO> deptPersonVOs = getDeptPersonVOs();
-        List<String> deptNames =
-                deptPersonVOs.parallelStream()
-                        .map(DeptPersonVO::getBmmc)
-                        .collect(Collectors.toList());
-        this.deptNameTree = new FuzzySearchTree(deptNames, false);
-    }
-
-    private static void constructPath(
-            Map<String, AsDepart> deptMap,
-            Map<String, DepartTreeNode> deptTreeNodeMap,
-            String deptCode) {
-        if (ConstantCommon.NO_DEPT.equals(deptCode)) {
-            return;
+            return snapshot.getFullTree();
         }
-        if (!deptTreeNodeMap.containsKey(deptCode)) {
-            //            log.info("当前处理过的部门map：" + deptTreeNodeMap);
-            //            log.info("当前处理的部门编号：" + deptCode);
-            AsDepart dept = deptMap.get(deptCode);
-            if (dept == null) {
-                log.error("从{}缓存中获取的map中，部门不存在，部门编号：{}", DEPART_MAP, deptCode);
-                return;
-            }
-            DepartTreeNode node = new DepartTreeNode(dept);
 
-            deptTreeNodeMap.put(deptCode, node);
-            if (dept.getBmdm().equals(ROOT_DEPARTMENT_NUM)) {
-                log.info("已经到达根节点，当前处理过的部门有：{}", deptTreeNodeMap.keySet());
-                return;
-            }
-            String parentDeptCode = dept.getSjbmdm();
-            if (deptMap.containsKey(parentDeptCode)) {
-                if (!deptTreeNodeMap.containsKey(parentDeptCode)) {
-                    constructPath(deptMap, deptTreeNodeMap, parentDeptCode);
-                }
-                DepartTreeNode parent = deptTreeNodeMap.get(parentDeptCode);
-                parent.addChildren(node);
-            } else {
-                log.error(
-                        "从{}缓存中获取的map中，上级部门不存在，当前部门编号：{}，上级部门编码：{}",
-                        DEPART_MAP,
-                        deptCode,
-                        parentDeptCode);
-            }
-        }
+        SearchDiagnostics diagnostics = searchEngine.startDiagnostics(keyword, limit);
+        // 只有当keyword包含中文时才搜索部门，否则只搜索人员
+        List<DeptPersonVO> targetDepartments =
+                isContainChinese(keyword)
+                        ? searchEngine.findDepartments(
+                                snapshot, keyword, limit, maxDistance, DeptPersonVO::new)
+                        : Collections.emptyList();
+        diagnostics.departments(targetDepartments);
+        List<UserVo> targetUsers = searchEngine.findUsers(snapshot, keyword, limit, maxDistance);
+        diagnostics.users(targetUsers);
+        Map<String, DepartTreeNode> deptTreeNodeMap =
+                searchEngine.buildTree(snapshot, targetDepartments, targetUsers, limit);
+        diagnostics.finish(deptTreeNodeMap.size());
+        return OrgSearchEngine.rootOf(deptTreeNodeMap);
     }
 
-    private Map<String, AsDepart> getDeptMapFromCache() {
-        String key = DEPART_MAP;
-        Map<String, AsDepart> result = redisCommon.get(key);
-        if (result == null) {
-            Example deptEx = new Example(AsDepart.class);
-            deptEx.createCriteria().andEqualTo(ConstantCommon.STATUS, StatusEnum.LIVE.getCode());
-            List<AsDepart> asDeparts = departMapper.selectByExample(deptEx);
-            result =
-                    asDeparts.stream()
-                            .collect(Collectors.toMap(AsDepart::getBmdm, Function.identity()));
-            redisCommon.set(key, result, expireTime);
-        }
-        return result;
+    /**
+     * 模糊查询部门或者人员，按 NDJSON 逐行写出，搜索范围与 {@link #fuzzySearchTree(String, int, int)} 相同
+     *
+     * @param keyword 查询的关键字
+     * @param limit 部门与人员各自的最大条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @param writer 输出
+     * @throws IOException 写出失败
+     */
+    @Override
+    public void fuzzySearchStream(String keyword, int limit, int maxDistance, Writer writer) throws IOException {
+        // 只有当keyword包含中文时才搜索部门，否则只搜索人员
+        searchEngine.stream(
+                searchEngine.getSnapshot(), keyword, limit, maxDistance, isContainChinese(keyword), writer);
     }
 
     /**
@@ -421,46 +338,4 @@ public class DepartServiceImpl implements DepartService {
         Matcher m = p.matcher(str);
         return m.find();
     }
-
-    @Scheduled(fixedDelay = 1000 * 60 * 10)
-    public void updateFuzzySearchTree() {
-        log.info("开始初始化全量部门树");
-        long start = System.currentTimeMillis();
-        Map<String, AsDepart> deptMap = getDeptMapFromCache();
-        List<DeptPersonVO> targetDepartments = getTargetDepartments(null, deptMap);
-        List<UserVo> targetUsers = getTargetUsers(null);
-        Map<String, DepartTreeNode> deptTreeNodeMap = new HashMap<>(targetDepartments.size());
-        targetDepartments.forEach(
-                deptPersonVO -> constructPath(deptMap, deptTreeNodeMap, deptPersonVO.getBmdm()));
-        targetUsers.parallelStream().forEach(insertUserIntoDeptTree(deptMap, deptTreeNodeMap));
-        fullTree = deptTreeNodeMap.getOrDefault(ROOT_DEPARTMENT_NUM, new DepartTreeNode());
-        log.info("初始化全量部门树完成，耗时：{}ms", System.currentTimeMillis() - start);
-
-        log.info("开始生成部门名称模糊搜索树");
-        long generateDeptNameFuzzySearchTrees = System.currentTimeMillis();
-        generateDeptNameFuzzySearchTrees();
-        log.info(
-                "生成部门名称模糊搜索树完成，耗时：{}ms",
-                System.currentTimeMillis() - generateDeptNameFuzzySearchTrees);
-
-        log.info("开始生成人员名称模糊搜索树");
-        long generateUserFuzzySearchTrees = System.currentTimeMillis();
-        generateUserFuzzySearchTrees();
-        log.info(
-                "生成人员名称模糊搜索树完成，耗时：{}ms", System.currentTimeMillis() - generateUserFuzzySearchTrees);
-    }
-
-    private static Consumer<UserVo> insertUserIntoDeptTree(
-            Map<String, AsDepart> deptMap, Map<String, DepartTreeNode> deptTreeNodeMap) {
-        return user -> {
-            String deptCode = user.getDepartmentNumber();
-            constructPath(deptMap, deptTreeNodeMap, deptCode);
-            DepartTreeNode node = deptTreeNodeMap.get(deptCode);
-            if (node == null) {
-                log.error("部门树节点缓存中找不到,deptCode:{},user:{}", deptCode, user);
-                return;
-            }
-            node.addUser(user);
-        };
-    }
 }
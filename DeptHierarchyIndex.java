@@ -0,0 +1,258 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+
+/**
+ * 部门上下级关系索引。
+ * <p>
+ * 每个部门分配一个 int 编号，记录上级部门编号，并按深度优先遍历记录进入、离开序号（欧拉序）。
+ * 某部门的全部下级部门在遍历序中是一段连续区间，因此：
+ * <ul>
+ *     <li>获取上级部门链：沿上级指针走 O(depth) 步；</li>
+ *     <li>获取全部下级部门：直接截取遍历序区间；</li>
+ *     <li>判断 A 是否在 B 之下：比较两者的区间，O(1)。</li>
+ * </ul>
+ * 构建完成后只读，随组织架构搜索快照一起发布。
+ */
+public class DeptHierarchyIndex {
+
+    private static final int NO_PARENT = -1;
+
+    /**
+     * 编号为 "0" 的部门不再向上查找，与原先 getParentNumList 的终止条件相同
+     */
+    private static final String TOP_DEPT_NUM = "0";
+
+    /**
+     * 部门编号 -> int 编号
+     */
+    private final Map<String, Integer> ids;
+
+    /**
+     * int 编号 -> 部门编号
+     */
+    private final String[] codes;
+
+    /**
+     * int 编号 -> 上级部门 int 编号，没有上级时为 NO_PARENT
+     */
+    private final int[] parents;
+
+    /**
+     * int 编号 -> 进入序号，即在 order 中的位置
+     */
+    private final int[] enter;
+
+    /**
+     * int 编号 -> 离开序号，下级部门的进入序号都落在 (enter, exit) 内
+     */
+    private final int[] exit;
+
+    /**
+     * 深度优先遍历序，元素为 int 编号
+     */
+    private final int[] order;
+
+    /**
+     * 使用部门构建上下级关系索引。
+     *
+     * @param departs 在用部门
+     */
+    public DeptHierarchyIndex(Collection<AsDepart> departs) {
+        int n = departs.size();
+        this.ids = new HashMap<>(n * 2);
+        this.codes = new String[n];
+        int id = 0;
+        for (AsDepart depart : departs) {
+            if (depart.getBmdm() != null && !ids.containsKey(depart.getBmdm())) {
+                ids.put(depart.getBmdm(), id);
+                codes[id++] = depart.getBmdm();
+            }
+        }
+        n = id;
+        this.parents = new int[n];
+        Arrays.fill(parents, NO_PARENT);
+        for (AsDepart depart : departs) {
+            Integer self = ids.get(depart.getBmdm());
+            // 与原先 getParentNumList 的终止条件一致：部门编号为 "0"、上级部门编号为空、上级部门不存在时不再向上查找；
+            // 上级是自身时原先会无限递归，这里同样视为没有上级
+            if (self == null
+                    || TOP_DEPT_NUM.equals(depart.getBmdm())
+                    || StringUtils.isEmpty(depart.getSjbmdm())) {
+                continue;
+            }
+            Integer parent = ids.get(depart.getSjbmdm());
+            if (parent != null && !parent.equals(self)) {
+                parents[self] = parent;
+            }
+        }
+
+        // 按上级部门计数排序，得到扁平的下级部门邻接表
+        int[] childStart = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (parents[i] != NO_PARENT) {
+                childStart[parents[i] + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            childStart[i + 1] += childStart[i];
+        }
+        int[] children = new int[childStart[n]];
+        int[] fill = Arrays.copyOf(childStart, n);
+        for (int i = 0; i < n; i++) {
+            if (parents[i] != NO_PARENT) {
+                children[fill[parents[i]]++] = i;
+            }
+        }
+
+        this.enter = new int[n];
+        this.exit = new int[n];
+        this.order = new int[n];
+        Arrays.fill(enter, -1);
+        int[] stack = new int[n];
+        int[] cursor = new int[n];
+        int visited = 0;
+        // 从没有上级的部门开始遍历
+        for (int root = 0; root < n; root++) {
+            if (parents[root] == NO_PARENT) {
+                visited = traverse(root, visited, childStart, children, stack, cursor);
+            }
+        }
+        // 剩余未访问的部门，其上级链必然成环：沿上级走 n 步一定落在环上，从那里断开作为独立的根
+        for (int i = 0; i < n; i++) {
+            if (enter[i] < 0) {
+                int root = i;
+                for (int step = 0; step < n; step++) {
+                    root = parents[root];
+                }
+                parents[root] = NO_PARENT;
+                visited = traverse(root, visited, childStart, children, stack, cursor);
+            }
+        }
+    }
+
+    /**
+     * 非递归深度优先遍历，避免层级很深时栈溢出。
+     *
+     * @return 遍历后已分配的序号数
+     */
+    private int traverse(
+            int root, int visited, int[] childStart, int[] children, int[] stack, int[] cursor) {
+        int top = 0;
+        stack[top] = root;
+        cursor[top] = childStart[root];
+        enter[root] = visited;
+        order[visited++] = root;
+        while (top >= 0) {
+            int node = stack[top];
+            if (cursor[top] < childStart[node + 1]) {
+                int child = children[cursor[top]++];
+                if (enter[child] >= 0) {
+                    continue;
+                }
+                enter[child] = visited;
+                order[visited++] = child;
+                stack[++top] = child;
+                cursor[top] = childStart[child];
+            } else {
+                exit[node] = visited;
+                top--;
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * 是否包含该部门
+     */
+    public boolean contains(String deptCode) {
+        return ids.containsKey(deptCode);
+    }
+
+    /**
+     * 获取部门自身及全部上级部门编号，由近及远。
+     * 向上查找的终止条件与原先 getParentNumList 相同，见构造方法。
+     *
+     * @param deptCode 部门编号
+     * @return 部门编号列表，部门不存在时为空列表
+     */
+    public List<String> getAncestors(String deptCode) {
+        Integer id = ids.get(deptCode);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = id; i != NO_PARENT; i = parents[i]) {
+            result.add(codes[i]);
+        }
+        return result;
+    }
+
+    /**
+     * 获取部门自身及全部下级部门编号。
+     *
+     * @param deptCode 部门编号
+     * @return 部门编号列表，部门不存在时为空列表
+     */
+    public List<String> getDescendants(String deptCode) {
+        return getDescendants(deptCode, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 获取部门自身及下级部门编号，按遍历序最多取 limit 个，用于结果条数有限的场景，
+     * 命中上层部门时不必先取出整棵子树。
+     *
+     * @param deptCode 部门编号
+     * @param limit    最多返回的个数
+     * @return 部门编号列表，部门不存在时为空列表
+     */
+    public List<String> getDescendants(String deptCode, int limit) {
+        Integer id = ids.get(deptCode);
+        if (id == null || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int end = exit[id] - enter[id] > limit ? enter[id] + limit : exit[id];
+        List<String> result = new ArrayList<>(end - enter[id]);
+        for (int i = enter[id]; i < end; i++) {
+            result.add(codes[order[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * 获取部门的直属下级部门编号：在遍历序区间内逐个跳过每个直属下级的整棵子树。
+     *
+     * @param deptCode 部门编号
+     * @return 部门编号列表，部门不存在时为空列表
+     */
+    public List<String> getChildren(String deptCode) {
+        Integer id = ids.get(deptCode);
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (int i = enter[id] + 1; i < exit[id]; i = exit[order[i]]) {
+            result.add(codes[order[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * 判断部门是否是另一部门自身或其下级部门。
+     *
+     * @param deptCode     部门编号
+     * @param ancestorCode 上级部门编号
+     * @return deptCode 与 ancestorCode 相同或在其之下时为 true
+     */
+    public boolean isUnder(String deptCode, String ancestorCode) {
+        Integer id = ids.get(deptCode);
+        Integer ancestor = ids.get(ancestorCode);
+        if (id == null || ancestor == null) {
+            return false;
+        }
+        return enter[ancestor] <= enter[id] && exit[id] <= exit[ancestor];
+    }
+}
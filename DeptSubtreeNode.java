@@ -0,0 +1,52 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 按需加载的部门树节点：只包含请求深度内的下级部门和一页直属人员，
+ * 更深的下级部门由前端根据 childCount 再次按部门编号加载。
+ */
+@Data
+public class DeptSubtreeNode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 部门编号
+     */
+    private String deptCode;
+
+    /**
+     * 部门名称
+     */
+    private String deptName;
+
+    /**
+     * 上级部门编号
+     */
+    private String parentCode;
+
+    /**
+     * 直属下级部门数
+     */
+    private int childCount;
+
+    /**
+     * 直属人员总数
+     */
+    private int userCount;
+
+    /**
+     * 当前页的直属人员
+     */
+    private List<UserVo> users;
+
+    /**
+     * 直属下级部门，超出请求深度时为 null
+     */
+    private List<DeptSubtreeNode> children;
+}
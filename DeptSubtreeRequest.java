@@ -0,0 +1,54 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import lombok.Data;
+
+import java.io.Serializable;
+
+/**
+ * 按需加载部门树的请求参数
+ */
+@Data
+public class DeptSubtreeRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 默认加载深度：部门自身及其直属下级部门
+     */
+    public static final int DEFAULT_DEPTH = 1;
+
+    /**
+     * 单次请求允许的最大加载深度
+     */
+    public static final int MAX_DEPTH = 5;
+
+    /**
+     * 每个部门默认返回的直属人员数
+     */
+    public static final int DEFAULT_USER_LIMIT = 50;
+
+    /**
+     * 每个部门最多返回的直属人员数
+     */
+    public static final int MAX_USER_LIMIT = 500;
+
+    /**
+     * 部门编号，为空时从根部门开始
+     */
+    private String deptCode;
+
+    /**
+     * 加载深度，0 表示只返回部门自身
+     */
+    private Integer depth;
+
+    /**
+     * 每个部门直属人员的起始位置
+     */
+    private Integer userOffset;
+
+    /**
+     * 每个部门直属人员的返回条数
+     */
+    private Integer userLimit;
+}
@@ -0,0 +1,94 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.DepartTreeNode;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 部门树节点的创建与挂载方式。
+ * <p>
+ * 部门服务与组织树服务对外返回的部门树节点类型不同，快照内的数据和拼装逻辑共用，
+ * 由调用方传入各自节点类型的创建、挂载方式，直接拼装成对外返回的类型。
+ *
+ * @param <N> 部门树节点类型
+ */
+public interface DeptTreeNodeFactory<N> {
+
+    /**
+     * 部门服务使用的部门树节点
+     */
+    DeptTreeNodeFactory<DepartTreeNode> DEPART_TREE_NODE =
+            of(DepartTreeNode::new, DepartTreeNode::new, DepartTreeNode::addChildren, DepartTreeNode::addUser);
+
+    /**
+     * 组织树服务使用的部门树节点
+     */
+    DeptTreeNodeFactory<com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode> ORG_TREE_NODE =
+            of(
+                    com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode::new,
+                    com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode::new,
+                    com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode::addChildren,
+                    com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode::addUser);
+
+    /**
+     * 创建部门节点
+     */
+    N create(AsDepart depart);
+
+    /**
+     * 创建没有命中时返回的空节点
+     */
+    N empty();
+
+    /**
+     * 把下级部门节点挂到上级部门节点下
+     */
+    void addChild(N parent, N child);
+
+    /**
+     * 把人员挂到部门节点下
+     */
+    void addUser(N node, UserVo user);
+
+    /**
+     * 使用节点类型的构造方法与挂载方法组合出工厂
+     *
+     * @param create   部门节点的构造方法
+     * @param empty    空节点的构造方法
+     * @param addChild 挂载下级部门的方法
+     * @param addUser  挂载人员的方法
+     * @param <N>      部门树节点类型
+     * @return 工厂
+     */
+    static <N> DeptTreeNodeFactory<N> of(
+            Function<AsDepart, N> create,
+            Supplier<N> empty,
+            BiConsumer<N, N> addChild,
+            BiConsumer<N, UserVo> addUser) {
+        return new DeptTreeNodeFactory<N>() {
+            @Override
+            public N create(AsDepart depart) {
+                return create.apply(depart);
+            }
+
+            @Override
+            public N empty() {
+                return empty.get();
+            }
+
+            @Override
+            public void addChild(N parent, N child) {
+                addChild.accept(parent, child);
+            }
+
+            @Override
+            public void addUser(N node, UserVo user) {
+                addUser.accept(node, user);
+            }
+        };
+    }
+}
@@ -0,0 +1,120 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.cestc.dc.common.commonBean.ResultVO;
+import com.cestc.dc.repository.domain.entity.user.DepartTreeNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 预先序列化的全量部门树响应。
+ * <p>
+ * 每个快照只序列化一次，全量重建与增量刷新都在定时任务线程上、快照发布之前完成，同时保存原始与 gzip 压缩两份字节，
+ * 请求线程直接返回这份字节，不再重复序列化整棵树；内容摘要作为 ETag，未变化时返回 304。
+ */
+@Slf4j
+public class FullTreeResponse {
+
+    private static final String GZIP = "gzip";
+
+    private final byte[] json;
+
+    private final byte[] gzip;
+
+    private final String etag;
+
+    private FullTreeResponse(byte[] json, byte[] gzip, String etag) {
+        this.json = json;
+        this.gzip = gzip;
+        this.etag = etag;
+    }
+
+    /**
+     * 将全量部门树按接口返回格式序列化、压缩并计算摘要，只在构建快照时调用，请求线程不调用
+     *
+     * @param fullTree 全量部门树
+     * @return 预先序列化的响应
+     */
+    public static FullTreeResponse render(DepartTreeNode fullTree) {
+        long start = System.currentTimeMillis();
+        byte[] json =
+                JSON.toJSONBytes(
+                        ResultVO.success(fullTree), SerializerFeature.DisableCircularReferenceDetect);
+        byte[] gzip = gzip(json);
+        String etag = "W/\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+        log.info(
+                "全量部门树序列化完成，大小：{}字节，压缩后：{}字节，耗时：{}ms",
+                json.length,
+                gzip.length,
+                System.currentTimeMillis() - start);
+        return new FullTreeResponse(json, gzip, etag);
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(data);
+        } catch (IOException e) {
+            // 只写内存，不会真正发生
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 生成响应：If-None-Match 命中时返回 304，客户端支持 gzip 时返回压缩后的字节
+     *
+     * @param request 请求
+     * @return 响应，正文为序列化好的字节，由 Spring 原样写出
+     */
+    public ResponseEntity<byte[]> toResponseEntity(HttpServletRequest request) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.ETAG, etag);
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+        byte[] body = json;
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null && acceptEncoding.contains(GZIP)) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP);
+            body = gzip;
+        }
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        headers.setContentLength(body.length);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+
+    /**
+     * 按弱比较判断 If-None-Match 是否包含当前 ETag
+     */
+    private boolean matches(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaqueTag = etag.substring(2);
+        for (String tag : ifNoneMatch.split(",")) {
+            String candidate = tag.trim();
+            if ("*".equals(candidate)
+                    || opaqueTag.equals(candidate.startsWith("W/") ? candidate.substring(2) : candidate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+}
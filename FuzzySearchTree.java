@@ -1,10 +1,6 @@
 package com.cestc.dc.apihandler.deptTree;
 
-import net.sourceforge.pinyin4j.PinyinHelper;
-import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
-import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
-import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
-import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.ss.formula.functions.T;
 
@@ -12,63 +8,503 @@ import org.apache.poi.ss.formula.functions.T;
  * @author Yibowen
  * @date 2023-04-02
  */
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
+@Slf4j
 public class FuzzySearchTree {
     /**
-     * TrieNode 类，包含子节点映射和部门名称 Set。
+     * 片段分隔符，每个片段（名称或其拼音）以它结尾，保证子串匹配不会跨越片段。
      */
-    private static class TrieNode {
-        Map<Character, TrieNode> children = new HashMap<>();
-        Set<String> data = new HashSet<>();
-    }
+    private static final char SEPARATOR = '\0';
+
+    /**
+     * 小区间改用插入排序的阈值。
+     */
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    /**
+     * 元素数不少于该值的数组放到堆外，更小的（如增量索引）仍在堆内，避免频繁申请堆外内存。
+     */
+    private static final int OFF_HEAP_THRESHOLD = 1 << 14;
+
+    /**
+     * 名称数或后缀数不少于该值时并行构建，更小的（如增量索引）在当前线程构建。
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 12;
+
+    /**
+     * 每个名称最多展开的多音字读音组合数。
+     */
+    private static final int MAX_PINYIN_COMBINATIONS = 8;
+
+    /**
+     * 默认返回条数。
+     */
+    public static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    /**
+     * 单次查询允许的最大返回条数。
+     */
+    public static final int MAX_SEARCH_LIMIT = 500;
+
+    /**
+     * 流式返回时单次查询允许的最大返回条数。
+     */
+    public static final int MAX_STREAM_LIMIT = 10000;
+
+    /**
+     * 容错查询允许的最大编辑距离。
+     */
+    public static final int MAX_EDIT_DISTANCE = 2;
+
+    /**
+     * 排序档位：完全匹配、前缀匹配、包含匹配。
+     */
+    private static final int RANK_EXACT = 0;
+    private static final int RANK_PREFIX = 1;
+    private static final int RANK_CONTAINS = 2;
+
+    /**
+     * 容错命中的档位为该值加编辑距离，排在所有子串命中之后。
+     */
+    private static final int RANK_TYPO = 3;
 
-    private final TrieNode root = new TrieNode();
+    /*
+     * 索引数据不放在堆内数组中：新构建的大索引放在堆外（direct buffer），从快照文件恢复的索引
+     * 直接是映射文件的视图，GC 不再扫描和复制这些数据，堆内只剩下这个外观对象。
+     * 只按绝对下标读取，position 始终为 0，多个请求线程可以同时读取。
+     *
+     * 堆外内存只在 buffer 对象被 GC 回收时释放，不能在发布新快照时主动释放：旧快照上可能仍有请求在读取。
+     * 全量重建期间新旧两份索引同时存在，-XX:MaxDirectMemorySize 应不小于各搜索树索引大小
+     * （构建日志中的“索引大小”，见 getIndexBytes）之和的两倍再留出余量；超出上限时该缓冲区退回堆内数组，
+     * 搜索结果不受影响，只是重新由 GC 管理。
+     */
+
+    /**
+     * 去重后的原始名称依次拼接，下标即名称序号；索引中只保存 int 序号，不再按节点持有字符串集合。
+     */
+    private final CharBuffer wordChars;
+
+    /**
+     * 每个名称在 wordChars 中的起始偏移，比名称数多一个，最后一个是总长度。
+     */
+    private final IntBuffer wordOffsets;
+
+    /**
+     * 所有片段小写后依次拼接的字符缓冲区。
+     */
+    private final CharBuffer text;
+
+    /**
+     * 广义后缀数组：text 中所有非分隔符位置，按后缀字典序排列。
+     */
+    private final IntBuffer suffixes;
+
+    /**
+     * 每个片段在 text 中的起始偏移，升序。
+     */
+    private final IntBuffer segmentStarts;
+
+    /**
+     * 每个片段对应的名称序号。
+     */
+    private final IntBuffer segmentWords;
+
+    /**
+     * 容错查询使用的片段字典序索引，随实例一起构建，查询时不再加锁或构建。
+     */
+    private final TypoIndex typoIndex;
+
+    /**
+     * 联想搜索的查询缓存，随本实例一起被替换。
+     */
+    private final QueryCache queryCache = new QueryCache();
 
     /**
      * 使用部门列表构建 FuzzySearchTree 实例。
+     * <p>
+     * 不再把每个子串插入 Trie，而是把名称（及拼音）拼接为一个字符缓冲区并建立广义后缀数组，
+     * 内存与名称总长度成线性关系；任意子串都是某个后缀的前缀，因此子串查询仍然精确。
+     * 构建在堆内数组上完成，排序后复制到堆外。
+     * <p>
+     * 数据量较大时拼音展开按名称并行；后缀按首字符分片，各分片在 ForkJoin 公共池中并行排序，
+     * 分片按字符顺序排列，排好后直接就是完整的后缀数组，不需要再合并。
      *
      * @param data         部门名称列表。
      * @param enablePinyin 是否启用拼音搜索。
      */
     public FuzzySearchTree(List<String> data, boolean enablePinyin) {
+        Set<String> distinct = new LinkedHashSet<>();
         data.forEach(word -> {
             if (StringUtils.isNotBlank(word)) {
-                // 处理中文名称
-                for (int i = 0; i < word.length(); i++) {
-                    for (int j = i + 1; j <= word.length(); j++) {
-                        insert(word.substring(i, j), word);
-                    }
+                distinct.add(word);
+            }
+        });
+        String[] words = distinct.toArray(new String[0]);
+
+        StringBuilder buffer = new StringBuilder();
+        int[] starts = new int[enablePinyin ? words.length * 3 : words.length];
+        int[] owners = new int[starts.length];
+        int segmentCount = 0;
+        List<Collection<String>> segmentsOfWords = segmentsOf(words, enablePinyin);
+        for (int id = 0; id < words.length; id++) {
+            for (String segment : segmentsOfWords.get(id)) {
+                int start = buffer.length();
+                if (!appendSegment(buffer, segment)) {
+                    continue;
                 }
-                if (enablePinyin) {
-                    // 处理拼音
-                    String pinyin = convertToPinyin(word);
-                    for (int i = 0; i < pinyin.length(); i++) {
-                        for (int j = i + 1; j <= pinyin.length(); j++) {
-                            insert(pinyin.substring(i, j), word);
-                        }
-                    }
+                if (segmentCount == starts.length) {
+                    starts = Arrays.copyOf(starts, segmentCount * 2);
+                    owners = Arrays.copyOf(owners, segmentCount * 2);
                 }
+                starts[segmentCount] = start;
+                owners[segmentCount++] = id;
             }
-        });
+        }
+        char[] chars = new char[buffer.length()];
+        buffer.getChars(0, buffer.length(), chars, 0);
+        int suffixCount = chars.length - segmentCount;
+        int[] suffixArray = new int[suffixCount];
+        int n = 0;
+        for (int pos = 0; pos < chars.length; pos++) {
+            if (chars[pos] != SEPARATOR) {
+                suffixArray[n++] = pos;
+            }
+        }
+        suffixArray = sortSuffixes(chars, suffixArray);
+
+        int[] offsets = new int[words.length + 1];
+        StringBuilder allWords = new StringBuilder();
+        for (int id = 0; id < words.length; id++) {
+            allWords.append(words[id]);
+            offsets[id + 1] = allWords.length();
+        }
+        this.wordChars = toBuffer(allWords.toString().toCharArray());
+        this.wordOffsets = toBuffer(offsets);
+        this.text = toBuffer(chars);
+        this.suffixes = toBuffer(suffixArray);
+        this.segmentStarts = toBuffer(Arrays.copyOf(starts, segmentCount));
+        this.segmentWords = toBuffer(Arrays.copyOf(owners, segmentCount));
+        this.typoIndex = new TypoIndex();
+    }
+
+    private static CharBuffer toBuffer(char[] values) {
+        ByteBuffer direct = values.length < OFF_HEAP_THRESHOLD ? null : allocateDirect(values.length * 2);
+        if (direct == null) {
+            return CharBuffer.wrap(values);
+        }
+        CharBuffer buffer = direct.asCharBuffer();
+        buffer.put(values).clear();
+        return buffer;
+    }
+
+    private static IntBuffer toBuffer(int[] values) {
+        ByteBuffer direct = values.length < OFF_HEAP_THRESHOLD ? null : allocateDirect(values.length * 4);
+        if (direct == null) {
+            return IntBuffer.wrap(values);
+        }
+        IntBuffer buffer = direct.asIntBuffer();
+        buffer.put(values).clear();
+        return buffer;
+    }
+
+    /**
+     * 分配堆外缓冲区，超出 -XX:MaxDirectMemorySize 时返回 null，由调用方退回堆内数组
+     */
+    private static ByteBuffer allocateDirect(int bytes) {
+        try {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        } catch (OutOfMemoryError e) {
+            log.warn("堆外内存不足，{}字节的索引数据改为放在堆内，请调大 -XX:MaxDirectMemorySize：{}", bytes, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 按名称顺序生成每个名称收录的片段，名称较多且启用拼音时并行展开。
+     */
+    private static List<Collection<String>> segmentsOf(String[] words, boolean enablePinyin) {
+        if (!enablePinyin) {
+            return Arrays.stream(words).map(Collections::singletonList).collect(Collectors.toList());
+        }
+        IntStream ids = IntStream.range(0, words.length);
+        if (words.length >= PARALLEL_THRESHOLD) {
+            ids = ids.parallel();
+        }
+        return ids.mapToObj(id -> pinyinSegmentsOf(words[id])).collect(Collectors.toList());
+    }
+
+    /**
+     * 对后缀数组排序。后缀较多时先按首字符做一次计数分配，再并行排序各分片（从第 2 个字符比较）。
+     *
+     * @return 排好序的后缀数组，可能不是传入的数组。
+     */
+    private static int[] sortSuffixes(char[] chars, int[] suffixArray) {
+        if (suffixArray.length < PARALLEL_THRESHOLD) {
+            new SuffixSorter(chars, suffixArray).sort(0, suffixArray.length, 0);
+            return suffixArray;
+        }
+        int[] bucketStarts = new int[Character.MAX_VALUE + 2];
+        for (int pos : suffixArray) {
+            bucketStarts[chars[pos] + 1]++;
+        }
+        for (int c = 1; c < bucketStarts.length; c++) {
+            bucketStarts[c] += bucketStarts[c - 1];
+        }
+        int[] sorted = new int[suffixArray.length];
+        int[] next = Arrays.copyOf(bucketStarts, bucketStarts.length - 1);
+        for (int pos : suffixArray) {
+            sorted[next[chars[pos]]++] = pos;
+        }
+        SuffixSorter sorter = new SuffixSorter(chars, sorted);
+        // 各分片互不重叠，可以同时在同一个数组上排序
+        IntStream.range(0, Character.MAX_VALUE + 1)
+                .filter(c -> bucketStarts[c + 1] - bucketStarts[c] > 1)
+                .parallel()
+                .forEach(c -> sorter.sort(bucketStarts[c], bucketStarts[c + 1], 1));
+        return sorted;
+    }
+
+    /**
+     * 启用拼音时一个名称收录的片段：名称本身，全拼与首字母（如“张三”收录 zhangsan、zs），
+     * 多音字（如单、曾）的其他读音组合，组合数最多 MAX_PINYIN_COMBINATIONS 个。
+     * 与名称本身相同（如纯英文名称）的写法不重复收录。
+     */
+    private static Collection<String> pinyinSegmentsOf(String word) {
+        Set<String> segments = new LinkedHashSet<>();
+        segments.add(word);
+        for (String variant : PinyinTable.variantsOf(word, MAX_PINYIN_COMBINATIONS)) {
+            if (!variant.equalsIgnoreCase(word)) {
+                segments.add(variant);
+            }
+        }
+        return segments;
     }
 
     /**
-     * 将部门名称的子字符串插入到 Trie 中。
+     * 使用持久化的索引数据恢复实例，跳过拼音转换与后缀排序。
+     */
+    private FuzzySearchTree(
+            CharBuffer wordChars,
+            IntBuffer wordOffsets,
+            CharBuffer text,
+            IntBuffer suffixes,
+            IntBuffer segmentStarts,
+            IntBuffer segmentWords) {
+        this.wordChars = wordChars;
+        this.wordOffsets = wordOffsets;
+        this.text = text;
+        this.suffixes = suffixes;
+        this.segmentStarts = segmentStarts;
+        this.segmentWords = segmentWords;
+        this.typoIndex = new TypoIndex();
+    }
+
+    /**
+     * 将索引数据写入输出流，按 {@link #readFrom} 的顺序读回。
      *
-     * @param subString 部门名称的子字符串。
-     * @param word      完整的部门名称。
+     * @param out 输出流。
+     * @throws IOException 写入失败。
      */
-    private void insert(String subString, String word) {
-        subString = subString.toLowerCase();
-        TrieNode node = root;
-        // 遍历子字符串的字符
-        for (char c : subString.toCharArray()) {
-            // 如果字符不存在，创建新节点
-            node = node.children.computeIfAbsent(c, k -> new TrieNode());
+    void writeTo(DataOutputStream out) throws IOException {
+        writeChars(out, wordChars);
+        writeInts(out, wordOffsets);
+        writeChars(out, text);
+        writeInts(out, suffixes);
+        writeInts(out, segmentStarts);
+        writeInts(out, segmentWords);
+    }
+
+    private static void writeChars(DataOutputStream out, CharBuffer values) throws IOException {
+        out.writeInt(values.limit());
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeChar(values.get(i));
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, IntBuffer values) throws IOException {
+        out.writeInt(values.limit());
+        for (int i = 0; i < values.limit(); i++) {
+            out.writeInt(values.get(i));
+        }
+    }
+
+    /**
+     * 从 {@link #writeTo} 写出的数据恢复实例，读取后 buffer 的位置移到数据末尾。
+     * 不复制数据，恢复的实例直接读取 buffer 的内容，buffer 为映射文件时数据只占用页缓存。
+     * 容错索引不写入快照文件，恢复时按后缀数组重新挑出片段顺序，只需一次线性扫描。
+     *
+     * @param buffer 数据缓冲区，一般为映射的快照文件，恢复的实例存活期间不得修改。
+     * @return 恢复的实例。
+     */
+    static FuzzySearchTree readFrom(ByteBuffer buffer) {
+        CharBuffer wordChars = readChars(buffer);
+        IntBuffer wordOffsets = readInts(buffer);
+        CharBuffer text = readChars(buffer);
+        IntBuffer suffixes = readInts(buffer);
+        IntBuffer segmentStarts = readInts(buffer);
+        IntBuffer segmentWords = readInts(buffer);
+        return new FuzzySearchTree(wordChars, wordOffsets, text, suffixes, segmentStarts, segmentWords);
+    }
+
+    private static CharBuffer readChars(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        CharBuffer values = buffer.slice().order(buffer.order()).asCharBuffer();
+        values.limit(length);
+        buffer.position(buffer.position() + length * 2);
+        return values.slice();
+    }
+
+    private static IntBuffer readInts(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        IntBuffer values = buffer.slice().order(buffer.order()).asIntBuffer();
+        values.limit(length);
+        buffer.position(buffer.position() + length * 4);
+        return values.slice();
+    }
+
+    /**
+     * 收录的名称数。
+     */
+    public int getWordCount() {
+        return wordOffsets.limit() - 1;
+    }
+
+    /**
+     * 后缀数组长度，即所有片段的字符总数，查询时二分查找的范围。
+     */
+    public int getSuffixCount() {
+        return suffixes.limit();
+    }
+
+    /**
+     * 索引数据占用的字节数（含容错索引，不含对象头），用于观察索引规模的变化。
+     */
+    public long getIndexBytes() {
+        long chars = (long) wordChars.limit() + text.limit();
+        long ints =
+                (long) wordOffsets.limit()
+                        + suffixes.limit()
+                        + segmentStarts.limit()
+                        + segmentWords.limit()
+                        + typoIndex.sortedSegments.limit();
+        return chars * 2 + ints * 4;
+    }
+
+    /**
+     * 名称序号对应的原始名称。
+     */
+    private String wordAt(int id) {
+        return wordChars.subSequence(wordOffsets.get(id), wordOffsets.get(id + 1)).toString();
+    }
+
+    private int wordLength(int id) {
+        return wordOffsets.get(id + 1) - wordOffsets.get(id);
+    }
+
+    /**
+     * 将一个片段逐字符小写后追加到字符缓冲区，并以分隔符结尾。
+     *
+     * @param buffer  字符缓冲区。
+     * @param segment 片段内容。
+     * @return 是否已追加（空片段或包含分隔符的片段会被忽略）。
+     */
+    private static boolean appendSegment(StringBuilder buffer, String segment) {
+        if (segment.isEmpty() || segment.indexOf(SEPARATOR) >= 0) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            buffer.append(Character.toLowerCase(segment.charAt(i)));
+        }
+        buffer.append(SEPARATOR);
+        return true;
+    }
+
+    /**
+     * 构建时在堆内数组上排序后缀数组，排序完成后整体复制到堆外。
+     */
+    private static final class SuffixSorter {
+
+        private final char[] text;
+
+        private final int[] suffixes;
+
+        SuffixSorter(char[] text, int[] suffixes) {
+            this.text = text;
+            this.suffixes = suffixes;
+        }
+
+        /**
+         * 三路基数快速排序（multikey quicksort），对 suffixes[lo, hi) 按第 depth 个字符起排序。
+         * 每个后缀都以分隔符结尾，比较到分隔符即停止，不会越界。
+         */
+        private void sort(int lo, int hi, int depth) {
+            while (hi - lo > 1) {
+                if (hi - lo < INSERTION_SORT_THRESHOLD) {
+                    insertionSort(lo, hi, depth);
+                    return;
+                }
+                char pivot = text[suffixes[lo + (hi - lo) / 2] + depth];
+                int lt = lo;
+                int gt = hi - 1;
+                int i = lo;
+                while (i <= gt) {
+                    char c = text[suffixes[i] + depth];
+                    if (c < pivot) {
+                        swap(lt++, i++);
+                    } else if (c > pivot) {
+                        swap(i, gt--);
+                    } else {
+                        i++;
+                    }
+                }
+                sort(lo, lt, depth);
+                sort(gt + 1, hi, depth);
+                if (pivot == SEPARATOR) {
+                    return;
+                }
+                // 相等区间继续比较下一个字符
+                lo = lt;
+                hi = gt + 1;
+                depth++;
+            }
+        }
+
+        private void insertionSort(int lo, int hi, int depth) {
+            for (int i = lo + 1; i < hi; i++) {
+                for (int j = i; j > lo && compareSuffix(suffixes[j], suffixes[j - 1], depth) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int compareSuffix(int a, int b, int depth) {
+            while (true) {
+                char ca = text[a + depth];
+                char cb = text[b + depth];
+                if (ca != cb) {
+                    return ca - cb;
+                }
+                if (ca == SEPARATOR) {
+                    return 0;
+                }
+                depth++;
+            }
+        }
+
+        private void swap(int i, int j) {
+            int tmp = suffixes[i];
+            suffixes[i] = suffixes[j];
+            suffixes[j] = tmp;
         }
-        // 将部门名称添加到节点的部门集合中
-        node.data.add(word);
     }
 
     /**
@@ -78,46 +514,588 @@ public class FuzzySearchTree {
      * @return 匹配的部门名称列表。
      */
     public List<String> search(String query) {
-        query = query.toLowerCase();
-        TrieNode node = root;
-        // 遍历查询字符串的字符
-        for (char c : query.toCharArray()) {
-            // 获取子节点
-            node = node.children.get(c);
-            if (node == null) {
-                return new ArrayList<>();
+        if (query.isEmpty()) {
+            return new ArrayList<>();
+        }
+        int from = lowerBound(query);
+        int to = upperBound(query, from);
+        if (from >= to) {
+            return new ArrayList<>();
+        }
+        // 同一名称可能在多个位置命中，按名称序号排序后去重，开销只与命中数相关
+        int[] ids = new int[to - from];
+        for (int i = from; i < to; i++) {
+            ids[i - from] = wordOf(suffixes.get(i));
+        }
+        Arrays.sort(ids);
+        List<String> result = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            if (i == 0 || ids[i] != ids[i - 1]) {
+                result.add(wordAt(ids[i]));
             }
         }
-        return new ArrayList<>(node.data);
+        return result;
     }
 
     /**
-     * 将中文部门名称转换为拼音。
+     * 根据查询字符串搜索匹配的部门名称，按相关度排序并最多返回 limit 条。
+     * <p>
+     * 排序规则：完全匹配优先，其次是前缀匹配（名称或拼音以查询串开头），其余为包含匹配；
+     * 同一档位内名称越短越靠前。只维护大小为 limit 的有序候选，进不了前 limit 的命中
+     * 一次比较即被丢弃，候选全部为完全匹配时提前结束扫描。
      *
-     * @param chinese 中文部门名称。
-     * @return 拼音字符串。
+     * @param query 查询字符串。
+     * @param limit 最大返回条数。
+     * @return 排序后的部门名称列表。
      */
-    private String convertToPinyin(String chinese) {
-        HanyuPinyinOutputFormat outputFormat = new HanyuPinyinOutputFormat();
-        outputFormat.setCaseType(HanyuPinyinCaseType.LOWERCASE);
-        outputFormat.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
-
-        StringBuilder pinyin = new StringBuilder();
-        for (char ch : chinese.toCharArray()) {
-            try {
-                // 只转换中文字符，保留其他字符（如英文字母）
-                if (Character.toString(ch).matches("[\\u4E00-\\u9FA5]+")) {
-                    String[] pinyinArray = PinyinHelper.toHanyuPinyinStringArray(ch, outputFormat);
-                    if (pinyinArray != null && pinyinArray.length > 0) {
-                        pinyin.append(pinyinArray[0]); // 只获取第一个拼音
+    public List<String> search(String query, int limit) {
+        return wordsOf(rankedKeys(query, limit));
+    }
+
+    /**
+     * 与 {@link #search(String, int)} 相同，返回排序 key，最多 limit 个。
+     */
+    private long[] rankedKeys(String query, int limit) {
+        if (query.isEmpty() || limit <= 0) {
+            return new long[0];
+        }
+        // 命中较少的查询缓存完整的排序结果，逐字输入时由上一个前缀的结果过滤得到，不再查索引
+        String key = toLowerCase(query);
+        long[] ranked = queryCache.get(key);
+        if (ranked == null) {
+            long[] prefixRanked = queryCache.getPrefix(key);
+            if (prefixRanked != null) {
+                ranked = rerank(prefixRanked, key);
+            } else {
+                int from = lowerBound(query);
+                int to = upperBound(query, from);
+                if (to - from > QueryCache.MAX_CACHED_WORDS * 4) {
+                    return searchRange(query, from, to, limit);
+                }
+                ranked = rankRange(from, to, query.length());
+            }
+            queryCache.put(key, ranked);
+        }
+        return ranked.length <= limit ? ranked : Arrays.copyOf(ranked, limit);
+    }
+
+    private List<String> wordsOf(long[] keys) {
+        List<String> result = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            result.add(wordAt((int) key));
+        }
+        return result;
+    }
+
+    /**
+     * 排序 key 对应的名称，key 来自本实例的 {@link #searchKeys}。
+     */
+    String wordOfKey(long key) {
+        return wordAt((int) key);
+    }
+
+    /**
+     * 比较两个排序 key 的档位与名称长度，不比较名称序号；可用于合并不同实例的命中。
+     */
+    static int compareRank(long a, long b) {
+        return Long.compare(a >>> 32, b >>> 32);
+    }
+
+    /**
+     * 在后缀数组 [from, to) 中只保留排名前 limit 的名称，用于命中太多、不缓存的查询。
+     */
+    private long[] searchRange(String query, int from, int to, int limit) {
+        // key 由档位、名称长度和名称序号组成，越小越靠前
+        TopKeys top = new TopKeys(Math.min(limit, to - from));
+        for (int i = from; i < to; i++) {
+            int pos = suffixes.get(i);
+            int segment = segmentOf(pos);
+            int id = segmentWords.get(segment);
+            int rank = RANK_CONTAINS;
+            if (segmentStarts.get(segment) == pos) {
+                rank = text.get(pos + query.length()) == SEPARATOR ? RANK_EXACT : RANK_PREFIX;
+            }
+            long key = rankKey(rank, wordLength(id), id);
+            if (top.isFull() && key >= top.max()) {
+                continue;
+            }
+            top.offer(key, id);
+            if (top.isFull() && (int) (top.max() >>> 48) == RANK_EXACT) {
+                break;
+            }
+        }
+        return top.sorted();
+    }
+
+    /**
+     * 后缀数组 [from, to) 中全部命中名称的排序 key，同一名称只保留最靠前的一个，升序。
+     */
+    private long[] rankRange(int from, int to, int queryLength) {
+        long[] keys = new long[to - from];
+        for (int i = from; i < to; i++) {
+            int pos = suffixes.get(i);
+            int segment = segmentOf(pos);
+            int id = segmentWords.get(segment);
+            int rank = RANK_CONTAINS;
+            if (segmentStarts.get(segment) == pos) {
+                rank = text.get(pos + queryLength) == SEPARATOR ? RANK_EXACT : RANK_PREFIX;
+            }
+            keys[i - from] = rankKey(rank, wordLength(id), id);
+        }
+        Arrays.sort(keys);
+        IntHashSet seen = new IntHashSet(keys.length);
+        int size = 0;
+        for (long key : keys) {
+            if (seen.add((int) key)) {
+                keys[size++] = key;
+            }
+        }
+        return Arrays.copyOf(keys, size);
+    }
+
+    /**
+     * 用查询串重新过滤、排序前缀的完整命中集合。
+     */
+    private long[] rerank(long[] prefixRanked, String query) {
+        long[] keys = new long[prefixRanked.length];
+        int size = 0;
+        for (long prefixKey : prefixRanked) {
+            int id = (int) prefixKey;
+            int rank = bestRank(id, query);
+            if (rank >= 0) {
+                keys[size++] = rankKey(rank, wordLength(id), id);
+            }
+        }
+        keys = Arrays.copyOf(keys, size);
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    /**
+     * 名称各片段中查询串命中的最好档位，都不包含查询串时返回 -1。
+     * 名称按序号依次收录，同一名称的片段在 segmentWords 中连续。
+     */
+    private int bestRank(int id, String query) {
+        int best = -1;
+        for (int segment = firstSegmentOf(id);
+                segment < segmentWords.limit() && segmentWords.get(segment) == id;
+                segment++) {
+            int start = segmentStarts.get(segment);
+            for (int pos = start; text.get(pos) != SEPARATOR; pos++) {
+                if (matchesAt(pos, query)) {
+                    int rank = RANK_CONTAINS;
+                    if (pos == start) {
+                        rank = text.get(pos + query.length()) == SEPARATOR ? RANK_EXACT : RANK_PREFIX;
+                    }
+                    if (best < 0 || rank < best) {
+                        best = rank;
                     }
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    private boolean matchesAt(int pos, String query) {
+        for (int k = 0; k < query.length(); k++) {
+            char c = text.get(pos + k);
+            if (c == SEPARATOR || c != query.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 名称的第一个片段下标。
+     */
+    private int firstSegmentOf(int id) {
+        int lo = 0;
+        int hi = segmentWords.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segmentWords.get(mid) < id) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 与 {@link #comparePrefix} 相同，逐字符小写。
+     */
+    private static String toLowerCase(String query) {
+        char[] chars = new char[query.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(query.charAt(i));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 容错查询：先按 {@link #search(String, int)} 返回子串命中，不足 limit 条时
+     * 再补充与某个片段（名称、全拼或首字母）编辑距离不超过 maxDistance 的名称，按距离、名称长度排序。
+     * 查询串较短时实际允许的距离会更小，见 {@link #allowedDistance}。
+     *
+     * @param query       查询字符串。
+     * @param limit       最大返回条数。
+     * @param maxDistance 最大编辑距离，0 时与 {@link #search(String, int)} 相同，超过 MAX_EDIT_DISTANCE 时按其处理。
+     * @return 排序后的名称列表。
+     */
+    public List<String> search(String query, int limit, int maxDistance) {
+        return wordsOf(searchKeys(query, limit, maxDistance));
+    }
+
+    /**
+     * 与 {@link #search(String, int, int)} 相同，返回排序 key，最多 limit 个；
+     * 容错命中的档位排在子串命中之后，用于合并多个实例的结果。
+     */
+    long[] searchKeys(String query, int limit, int maxDistance) {
+        long[] keys = rankedKeys(query, limit);
+        int distance = Math.min(Math.min(maxDistance, MAX_EDIT_DISTANCE), allowedDistance(query.length()));
+        if (distance <= 0 || keys.length >= limit || segmentStarts.limit() == 0) {
+            return keys;
+        }
+        char[] target = toLowerCase(query).toCharArray();
+        long[] typoKeys = typoIndex.find(target, distance);
+        Arrays.sort(typoKeys);
+        // 同一名称可能已作为子串命中，或有多个片段容错命中，只保留第一次出现
+        IntHashSet seen = new IntHashSet(keys.length + typoKeys.length);
+        for (long key : keys) {
+            seen.add((int) key);
+        }
+        long[] merged = Arrays.copyOf(keys, Math.min(limit, keys.length + typoKeys.length));
+        int size = keys.length;
+        for (int i = 0; i < typoKeys.length && size < merged.length; i++) {
+            int id = (int) typoKeys[i];
+            if (seen.add(id)) {
+                merged[size++] = rankKey(RANK_TYPO + (int) (typoKeys[i] >>> 48), wordLength(id), id);
+            }
+        }
+        return size == merged.length ? merged : Arrays.copyOf(merged, size);
+    }
+
+    /**
+     * 查询串太短时容错会命中大量无关名称：少于 3 个字符不容错，少于 6 个字符最多容错 1 个。
+     */
+    private static int allowedDistance(int queryLength) {
+        return queryLength < 3 ? 0 : queryLength < 6 ? 1 : 2;
+    }
+
+    /**
+     * 按字典序排列的片段，相当于一棵隐式的字典树：共享前缀的片段在数组中连续，
+     * 某一层的子节点就是按该位置字符分出的连续区间。后缀数组中从片段起点开始的后缀
+     * 就是片段本身，按后缀数组的顺序挑出即可，不需要重新排序。
+     * <p>
+     * 查询时沿字典树深度优先遍历，每进入一个字符计算一行编辑距离，公共前缀只算一次；
+     * 一行中的最小值已超过最大距离时整个区间剪掉，效果与 Levenshtein 自动机相同。
+     */
+    private final class TypoIndex {
+
+        /**
+         * 按字典序排列的片段下标
+         */
+        private final IntBuffer sortedSegments;
+
+        private final int maxLength;
+
+        TypoIndex() {
+            int[] sorted = new int[segmentStarts.limit()];
+            int n = 0;
+            int longest = 0;
+            for (int i = 0; i < suffixes.limit(); i++) {
+                int pos = suffixes.get(i);
+                int idx = segmentOf(pos);
+                if (segmentStarts.get(idx) == pos) {
+                    sorted[n++] = idx;
+                    int end = pos;
+                    while (text.get(end) != SEPARATOR) {
+                        end++;
+                    }
+                    longest = Math.max(longest, end - pos);
+                }
+            }
+            sortedSegments = toBuffer(sorted);
+            maxLength = longest;
+        }
+
+        /**
+         * @return 命中片段的排序 key：距离、名称长度、名称序号，同一名称可能出现多次
+         */
+        long[] find(char[] target, int maxDistance) {
+            int m = target.length;
+            int[][] rows = new int[maxLength + 1][m + 1];
+            for (int j = 0; j <= m; j++) {
+                rows[0][j] = j;
+            }
+            Hits hits = new Hits();
+            walk(0, sortedSegments.limit(), 0, target, maxDistance, rows, hits);
+            return Arrays.copyOf(hits.keys, hits.size);
+        }
+
+        /**
+         * sortedSegments[lo, hi) 中的片段前 depth 个字符相同，rows[depth] 是这一前缀与查询串的编辑距离行
+         */
+        private void walk(
+                int lo, int hi, int depth, char[] target, int maxDistance, int[][] rows, Hits hits) {
+            int m = target.length;
+            int[] previous = rows[depth];
+            int i = lo;
+            while (i < hi) {
+                char c = charAt(i, depth);
+                int end = upperBound(i, hi, depth, c);
+                if (c == SEPARATOR) {
+                    // 片段到此结束，与查询串的距离就是这一行的最后一格
+                    if (previous[m] <= maxDistance) {
+                        for (int k = i; k < end; k++) {
+                            int id = segmentWords.get(sortedSegments.get(k));
+                            hits.add(rankKey(previous[m], wordLength(id), id));
+                        }
+                    }
+                } else {
+                    int[] current = rows[depth + 1];
+                    current[0] = previous[0] + 1;
+                    int rowMin = current[0];
+                    for (int j = 1; j <= m; j++) {
+                        int cost = target[j - 1] == c ? 0 : 1;
+                        current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                        rowMin = Math.min(rowMin, current[j]);
+                    }
+                    if (rowMin <= maxDistance) {
+                        walk(i, end, depth + 1, target, maxDistance, rows, hits);
+                    }
+                }
+                i = end;
+            }
+        }
+
+        private char charAt(int index, int depth) {
+            return text.get(segmentStarts.get(sortedSegments.get(index)) + depth);
+        }
+
+        /**
+         * [lo, hi) 中第 depth 个字符大于 c 的第一个下标
+         */
+        private int upperBound(int lo, int hi, int depth, char c) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (charAt(mid, depth) <= c) {
+                    lo = mid + 1;
                 } else {
-                    pinyin.append(ch);
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * 容错查询命中的排序 key
+     */
+    private static final class Hits {
+
+        long[] keys = new long[16];
+
+        int size;
+
+        void add(long key) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+    }
+
+    private static long rankKey(int rank, int length, int id) {
+        return ((long) rank << 48) | ((long) Math.min(length, 0xFFFF) << 32) | id;
+    }
+
+    /**
+     * 排名前 capacity 的候选：按 key 的大根堆，堆顶是当前最靠后的候选，新候选只需与堆顶比较；
+     * 另记名称序号在堆中的位置，同一名称只保留更靠前的 key。
+     * 每个候选 O(log capacity)，limit 较大（如流式返回的 {@link #MAX_STREAM_LIMIT}）时也不随命中数成倍增长。
+     */
+    private static final class TopKeys {
+
+        private final long[] heap;
+
+        private int size;
+
+        /**
+         * 名称序号 -> 堆中下标；元素移动后旧记录不删除，读取时核对该位置的名称序号
+         */
+        private final IntIntMap slots;
+
+        TopKeys(int capacity) {
+            heap = new long[capacity];
+            slots = new IntIntMap(Math.min(capacity, 1 << 10));
+        }
+
+        boolean isFull() {
+            return size == heap.length;
+        }
+
+        /**
+         * 当前最靠后的候选，只在 {@link #isFull()} 时有意义
+         */
+        long max() {
+            return heap[0];
+        }
+
+        void offer(long key, int id) {
+            int slot = slots.get(id, -1);
+            if (slot >= 0 && slot < size && (int) heap[slot] == id) {
+                if (key < heap[slot]) {
+                    heap[slot] = key;
+                    siftDown(slot);
+                }
+                return;
+            }
+            if (size < heap.length) {
+                heap[size] = key;
+                siftUp(size++);
+            } else if (key < heap[0]) {
+                heap[0] = key;
+                siftDown(0);
+            }
+        }
+
+        /**
+         * @return 升序排列的候选
+         */
+        long[] sorted() {
+            long[] keys = size == heap.length ? heap : Arrays.copyOf(heap, size);
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        private void siftUp(int index) {
+            long key = heap[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (heap[parent] >= key) {
+                    break;
                 }
-            } catch (BadHanyuPinyinOutputFormatCombination e) {
-                e.printStackTrace();
+                move(parent, index);
+                index = parent;
             }
+            place(key, index);
         }
-        return pinyin.toString();
+
+        private void siftDown(int index) {
+            long key = heap[index];
+            int half = size >>> 1;
+            while (index < half) {
+                int child = 2 * index + 1;
+                if (child + 1 < size && heap[child + 1] > heap[child]) {
+                    child++;
+                }
+                if (key >= heap[child]) {
+                    break;
+                }
+                move(child, index);
+                index = child;
+            }
+            place(key, index);
+        }
+
+        private void move(int from, int to) {
+            heap[to] = heap[from];
+            slots.put((int) heap[to], to);
+        }
+
+        private void place(long key, int index) {
+            heap[index] = key;
+            slots.put((int) key, index);
+        }
+    }
+
+    /**
+     * 第一个前缀不小于 query 的后缀下标。
+     */
+    private int lowerBound(String query) {
+        int lo = 0;
+        int hi = suffixes.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(suffixes.get(mid), query) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 第一个前缀大于 query 的后缀下标。
+     */
+    private int upperBound(String query, int from) {
+        int lo = from;
+        int hi = suffixes.limit();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparePrefix(suffixes.get(mid), query) <= 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 比较从 pos 开始的后缀与 query：后缀以 query 为前缀时返回 0。
+     * query 逐字符小写比较，不产生中间字符串。
+     */
+    private int comparePrefix(int pos, String query) {
+        for (int k = 0; k < query.length(); k++) {
+            char c = text.get(pos + k);
+            if (c == SEPARATOR) {
+                return -1;
+            }
+            char q = Character.toLowerCase(query.charAt(k));
+            if (c != q) {
+                return c - q;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 根据字符偏移找到所属片段的名称序号。
+     */
+    private int wordOf(int pos) {
+        return segmentWords.get(segmentOf(pos));
+    }
+
+    /**
+     * 根据字符偏移找到所属片段下标：起始偏移不大于 pos 的最后一个片段。
+     */
+    private int segmentOf(int pos) {
+        int lo = 0;
+        int hi = segmentStarts.limit() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segmentStarts.get(mid) <= pos) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * 将中文部门名称转换为拼音，每个汉字取第一个读音。
+     *
+     * @param chinese 中文部门名称。
+     * @return 拼音字符串。
+     */
+    public static String convertToPinyin(String chinese) {
+        return PinyinTable.toPinyin(chinese);
     }
 }
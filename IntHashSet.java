@@ -0,0 +1,82 @@
+package com.cestc.dc.apihandler.deptTree;
+
+/**
+ * 非负 int 的开放寻址哈希集合，用于查询时按名称序号去重，不装箱。
+ * <p>
+ * 槽位中保存 value + 1，0 表示空槽；线性探测，装载因子不超过 1/2，只增不删。非线程安全，每次查询单独创建。
+ */
+final class IntHashSet {
+
+    private int[] slots;
+
+    private int mask;
+
+    private int size;
+
+    /**
+     * @param expectedSize 预计的元素数，超过后自动扩容
+     */
+    IntHashSet(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        slots = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * 加入元素
+     *
+     * @param value 非负整数
+     * @return 元素原先不存在时为 true
+     */
+    boolean add(int value) {
+        int stored = value + 1;
+        int slot = indexOf(stored);
+        if (slots[slot] == stored) {
+            return false;
+        }
+        slots[slot] = stored;
+        if (++size * 2 > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    boolean contains(int value) {
+        int stored = value + 1;
+        return slots[indexOf(stored)] == stored;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * 元素所在的槽位，不存在时为探测到的第一个空槽
+     */
+    private int indexOf(int stored) {
+        int slot = mix(stored) & mask;
+        while (slots[slot] != 0 && slots[slot] != stored) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] old = slots;
+        slots = new int[old.length * 2];
+        mask = slots.length - 1;
+        for (int stored : old) {
+            if (stored != 0) {
+                slots[indexOf(stored)] = stored;
+            }
+        }
+    }
+
+    /**
+     * 名称序号是连续的小整数，打散后再取低位
+     */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,91 @@
+package com.cestc.dc.apihandler.deptTree;
+
+/**
+ * 非负 int 到 int 的开放寻址哈希映射，用于查询时记录名称序号在候选堆中的位置，不装箱。
+ * <p>
+ * 键槽中保存 key + 1，0 表示空槽；线性探测，装载因子不超过 1/2，只增改不删。非线程安全，每次查询单独创建。
+ */
+final class IntIntMap {
+
+    private int[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size;
+
+    /**
+     * @param expectedSize 预计的键数，超过后自动扩容
+     */
+    IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 4) * 2 - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * 设置键对应的值，已存在时覆盖
+     *
+     * @param key   非负整数
+     * @param value 值
+     */
+    void put(int key, int value) {
+        int stored = key + 1;
+        int slot = indexOf(stored);
+        values[slot] = value;
+        if (keys[slot] == stored) {
+            return;
+        }
+        keys[slot] = stored;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * @param key          非负整数
+     * @param defaultValue 键不存在时返回的值
+     * @return 键对应的值
+     */
+    int get(int key, int defaultValue) {
+        int stored = key + 1;
+        int slot = indexOf(stored);
+        return keys[slot] == stored ? values[slot] : defaultValue;
+    }
+
+    /**
+     * 键所在的槽位，不存在时为探测到的第一个空槽
+     */
+    private int indexOf(int stored) {
+        int slot = mix(stored) & mask;
+        while (keys[slot] != 0 && keys[slot] != stored) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = indexOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * 名称序号是连续的小整数，打散后再取低位
+     */
+    private static int mix(int value) {
+        int h = value * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
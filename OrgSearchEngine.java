@@ -0,0 +1,433 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.cestc.dc.common.domain.ConstantCommon;
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.DepartTreeNode;
+import com.cestc.dc.repository.domain.entity.user.DeptPersonVO;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.annotation.Resource;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import static com.cestc.dc.common.domain.ConstantCommon.DEPART_MAP;
+import static com.cestc.dc.common.domain.ConstantCommon.ROOT_DEPARTMENT_NUM;
+
+/**
+ * 组织架构模糊搜索，部门服务与组织树服务共用。
+ * <p>
+ * 快照由 {@link OrgSearchSnapshotManager} 统一构建和刷新，本类只负责在快照上查找命中的部门、人员
+ * 并拼装成部门树；是否搜索部门、命中部门如何展示由调用方决定。
+ * 同一次请求应先通过 {@link #getSnapshot()} 取得快照，之后的各步骤都传入这一个快照。
+ */
+@Slf4j
+@Component
+public class OrgSearchEngine {
+
+    /**
+     * 请求头为 true 时开启本次搜索的诊断日志
+     */
+    public static final String DIAGNOSTICS_HEADER = "X-Search-Diagnostics";
+
+    /**
+     * 流式返回时每写出多少行刷新一次，客户端可以边接收边处理
+     */
+    private static final int STREAM_FLUSH_LINES = 100;
+
+    @Resource private OrgSearchSnapshotManager snapshotManager;
+
+    @Resource private OrgSearchMetrics metrics;
+
+    /**
+     * 按比例抽样开启诊断日志，0 表示只在请求头要求时开启
+     */
+    @Value("${org-search.diagnostics.sample-rate:0}")
+    private double diagnosticsSampleRate;
+
+    /**
+     * 获取当前快照，不会阻塞，也不会触发重建
+     *
+     * @return 当前快照
+     */
+    public OrgSearchSnapshot getSnapshot() {
+        return snapshotManager.get();
+    }
+
+    /**
+     * 开始一次搜索的诊断：请求头要求或被抽样命中时开启，否则返回不做任何事的实例
+     *
+     * @param keyword 查询的关键字
+     * @param limit   最大返回条数
+     * @return 诊断信息
+     */
+    public SearchDiagnostics startDiagnostics(String keyword, int limit) {
+        if (isDiagnosticsRequested()
+                || (diagnosticsSampleRate > 0
+                        && ThreadLocalRandom.current().nextDouble() < diagnosticsSampleRate)) {
+            return SearchDiagnostics.enabled(keyword, limit);
+        }
+        return SearchDiagnostics.DISABLED;
+    }
+
+    private static boolean isDiagnosticsRequested() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return false;
+        }
+        return Boolean.parseBoolean(
+                ((ServletRequestAttributes) attributes).getRequest().getHeader(DIAGNOSTICS_HEADER));
+    }
+
+    /**
+     * 查找名称命中的部门及其全部下级部门，命中部门按相关度排在前面，截断时优先保留
+     *
+     * @param snapshot    快照
+     * @param keyword     查询的关键字
+     * @param limit       最大返回条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @param toTarget    命中部门转换为返回对象的方式，下级部门直接转换
+     * @return 部门列表
+     */
+    public List<DeptPersonVO> findDepartments(
+            OrgSearchSnapshot snapshot,
+            String keyword,
+            int limit,
+            int maxDistance,
+            Function<AsDepart, DeptPersonVO> toTarget) {
+        Timer.Sample sample = metrics.start();
+        List<String> targetDeptName = snapshot.searchDeptNames(keyword, limit, maxDistance);
+        if (targetDeptName.isEmpty()) {
+            metrics.stopSearch(sample, OrgSearchMetrics.PHASE_DEPT_INDEX);
+            metrics.recordHits(OrgSearchMetrics.HITS_DEPT, 0);
+            return Collections.emptyList();
+        }
+        OrgSearchRecords records = snapshot.getRecords();
+        List<AsDepart> asDeparts = records.findDepartsByNames(targetDeptName);
+        Map<String, DeptPersonVO> targets = new LinkedHashMap<>();
+        for (AsDepart asDepart : asDeparts) {
+            if (targets.size() >= limit) {
+                break;
+            }
+            targets.putIfAbsent(asDepart.getBmdm(), toTarget.apply(asDepart));
+        }
+        // 将所有子部门加入到搜索结果中，已作为命中部门加入的不重复加入
+        DeptHierarchyIndex deptIndex = records.getDeptIndex();
+        Map<String, AsDepart> deptMap = records.getDeptMap();
+        for (AsDepart asDepart : asDeparts) {
+            for (String childCode : deptIndex.getDescendants(asDepart.getBmdm(), limit)) {
+                if (targets.size() >= limit) {
+                    break;
+                }
+                AsDepart child = deptMap.get(childCode);
+                if (child != null && !targets.containsKey(childCode)) {
+                    targets.put(childCode, new DeptPersonVO(child));
+                }
+            }
+        }
+        List<DeptPersonVO> targetDepartments = new ArrayList<>(targets.values());
+        metrics.stopSearch(sample, OrgSearchMetrics.PHASE_DEPT_INDEX);
+        metrics.recordHits(OrgSearchMetrics.HITS_DEPT, targetDepartments.size());
+        return targetDepartments;
+    }
+
+    /**
+     * 查找 uid 或姓名命中的人员
+     *
+     * @param snapshot    快照
+     * @param keyword     查询的关键字
+     * @param limit       最大返回条数
+     * @param maxDistance 容错的最大编辑距离，0 表示不容错
+     * @return 人员列表
+     */
+    public List<UserVo> findUsers(OrgSearchSnapshot snapshot, String keyword, int limit, int maxDistance) {
+        Timer.Sample sample = metrics.start();
+        List<String> targetUid = snapshot.searchUids(keyword, limit, maxDistance);
+        List<String> targetName = snapshot.searchDisplayNames(keyword, limit, maxDistance);
+        List<UserVo> targetUsers =
+                targetUid.isEmpty() && targetName.isEmpty()
+                        ? Collections.emptyList()
+                        : snapshot.getRecords().findUsers(targetUid, targetName, limit);
+        metrics.stopSearch(sample, OrgSearchMetrics.PHASE_USER_INDEX);
+        metrics.recordHits(OrgSearchMetrics.HITS_USER, targetUsers.size());
+        return targetUsers;
+    }
+
+    /**
+     * 把命中的部门（连同其人员，最多 limit 个）和人员挂到从根部门开始的路径上
+     *
+     * @param snapshot          快照
+     * @param targetDepartments 命中的部门
+     * @param targetUsers       命中的人员
+     * @param limit             命中部门中最多挂载的人员数
+     * @return 部门编号到部门树节点的映射，根部门编号对应部门树根节点
+     */
+    public Map<String, DepartTreeNode> buildTree(
+            OrgSearchSnapshot snapshot,
+            List<DeptPersonVO> targetDepartments,
+            List<UserVo> targetUsers,
+            int limit) {
+        return buildTree(snapshot, targetDepartments, targetUsers, limit, DeptTreeNodeFactory.DEPART_TREE_NODE);
+    }
+
+    /**
+     * 把命中的部门（连同其人员，最多 limit 个）和人员挂到从根部门开始的路径上，拼装成指定类型的部门树节点
+     *
+     * @param snapshot          快照
+     * @param targetDepartments 命中的部门
+     * @param targetUsers       命中的人员
+     * @param limit             命中部门中最多挂载的人员数
+     * @param nodes             部门树节点的创建与挂载方式
+     * @param <N>               部门树节点类型
+     * @return 部门编号到部门树节点的映射，根部门编号对应部门树根节点
+     */
+    public <N> Map<String, N> buildTree(
+            OrgSearchSnapshot snapshot,
+            List<DeptPersonVO> targetDepartments,
+            List<UserVo> targetUsers,
+            int limit,
+            DeptTreeNodeFactory<N> nodes) {
+        Timer.Sample sample = metrics.start();
+        // 部门、人员都从内存记录中获取，搜索过程不访问数据库
+        OrgSearchRecords records = snapshot.getRecords();
+        Map<String, AsDepart> deptMap = records.getDeptMap();
+        Map<String, N> deptTreeNodeMap = new HashMap<>();
+        if (!targetDepartments.isEmpty()) {
+            targetDepartments.forEach(
+                    deptPersonVO -> constructPath(deptMap, deptTreeNodeMap, deptPersonVO.getBmdm(), nodes));
+            putUserInDepts(records, targetDepartments, deptTreeNodeMap, limit, nodes);
+        }
+        for (UserVo user : targetUsers) {
+            String deptCode = user.getDepartmentNumber();
+            constructPath(deptMap, deptTreeNodeMap, deptCode, nodes);
+            N node = deptTreeNodeMap.get(deptCode);
+            if (node == null) {
+                log.error("部门树节点缓存中找不到,deptCode:{},user:{}", deptCode, user);
+                continue;
+            }
+            nodes.addUser(node, user);
+        }
+        metrics.stopSearch(sample, OrgSearchMetrics.PHASE_ASSEMBLY);
+        return deptTreeNodeMap;
+    }
+
+    /**
+     * 将命中的部门、人员按 NDJSON 逐行写出，每行带有从根部门开始的上级部门路径，最后一行为汇总。
+     * <p>
+     * 不拼装部门树，每行写出后即可回收，内存占用只与写出缓冲区和 limit 个命中编号有关，与命中的部门树大小无关。
+     * 部门行先写名称命中的部门（matched 为 true），再写其下级部门；人员行在部门行之后。
+     *
+     * @param snapshot          快照
+     * @param keyword           查询的关键字
+     * @param limit             部门与人员各自的最大条数
+     * @param maxDistance       容错的最大编辑距离，0 表示不容错
+     * @param searchDepartments 是否搜索部门
+     * @param writer            输出，调用方负责缓冲与关闭
+     * @throws IOException 写出失败，一般是客户端断开
+     */
+    public void stream(
+            OrgSearchSnapshot snapshot,
+            String keyword,
+            int limit,
+            int maxDistance,
+            boolean searchDepartments,
+            Writer writer)
+            throws IOException {
+        OrgSearchRecords records = snapshot.getRecords();
+        NdjsonWriter out = new NdjsonWriter(writer, records);
+        int departments = 0;
+        if (searchDepartments) {
+            List<AsDepart> asDeparts =
+                    records.findDepartsByNames(snapshot.searchDeptNames(keyword, limit, maxDistance));
+            Set<String> written = new HashSet<>();
+            for (AsDepart asDepart : asDeparts) {
+                if (departments >= limit) {
+                    break;
+                }
+                if (written.add(asDepart.getBmdm())) {
+                    out.department(asDepart, true);
+                    departments++;
+                }
+            }
+            DeptHierarchyIndex deptIndex = records.getDeptIndex();
+            Map<String, AsDepart> deptMap = records.getDeptMap();
+            for (AsDepart asDepart : asDeparts) {
+                for (String childCode : deptIndex.getDescendants(asDepart.getBmdm(), limit)) {
+                    if (departments >= limit) {
+                        break;
+                    }
+                    AsDepart child = deptMap.get(childCode);
+                    if (child != null && written.add(childCode)) {
+                        out.department(child, false);
+                        departments++;
+                    }
+                }
+            }
+        }
+        List<UserVo> users = findUsers(snapshot, keyword, limit, maxDistance);
+        for (UserVo user : users) {
+            out.user(user);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("type", "end");
+        summary.put("departments", departments);
+        summary.put("users", users.size());
+        out.write(summary);
+        writer.flush();
+    }
+
+    /**
+     * 逐行写出 NDJSON，定期刷新
+     */
+    private static final class NdjsonWriter {
+
+        private final Writer writer;
+
+        private final OrgSearchRecords records;
+
+        private int lines;
+
+        NdjsonWriter(Writer writer, OrgSearchRecords records) {
+            this.writer = writer;
+            this.records = records;
+        }
+
+        void department(AsDepart depart, boolean matched) throws IOException {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "dept");
+            line.put("matched", matched);
+            line.put("dept", new DeptPersonVO(depart));
+            line.put("path", pathOf(depart.getSjbmdm()));
+            write(line);
+        }
+
+        void user(UserVo user) throws IOException {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "user");
+            line.put("user", user);
+            line.put("path", pathOf(user.getDepartmentNumber()));
+            write(line);
+        }
+
+        /**
+         * 部门及其全部上级部门，从根部门开始
+         */
+        private List<Map<String, String>> pathOf(String deptCode) {
+            List<String> ancestors = records.getDeptIndex().getAncestors(deptCode);
+            List<Map<String, String>> path = new ArrayList<>(ancestors.size());
+            for (int i = ancestors.size() - 1; i >= 0; i--) {
+                AsDepart ancestor = records.getDeptMap().get(ancestors.get(i));
+                if (ancestor != null) {
+                    Map<String, String> node = new LinkedHashMap<>();
+                    node.put("bmdm", ancestor.getBmdm());
+                    node.put("bmmc", ancestor.getBmmc());
+                    path.add(node);
+                }
+            }
+            return path;
+        }
+
+        void write(Object line) throws IOException {
+            writer.write(JSON.toJSONString(line, SerializerFeature.DisableCircularReferenceDetect));
+            writer.write('\n');
+            if (++lines % STREAM_FLUSH_LINES == 0) {
+                writer.flush();
+            }
+        }
+    }
+
+    /**
+     * 从部门树节点映射中取出根节点，没有命中时返回空节点
+     *
+     * @param deptTreeNodeMap {@link #buildTree} 的结果
+     * @return 部门树根节点
+     */
+    public static DepartTreeNode rootOf(Map<String, DepartTreeNode> deptTreeNodeMap) {
+        return rootOf(deptTreeNodeMap, DeptTreeNodeFactory.DEPART_TREE_NODE);
+    }
+
+    /**
+     * 从部门树节点映射中取出根节点，没有命中时返回空节点
+     *
+     * @param deptTreeNodeMap {@link #buildTree} 的结果
+     * @param nodes           部门树节点的创建与挂载方式
+     * @param <N>             部门树节点类型
+     * @return 部门树根节点
+     */
+    public static <N> N rootOf(Map<String, N> deptTreeNodeMap, DeptTreeNodeFactory<N> nodes) {
+        N root = deptTreeNodeMap.get(ROOT_DEPARTMENT_NUM);
+        return root != null ? root : nodes.empty();
+    }
+
+    private static <N> void putUserInDepts(
+            OrgSearchRecords records,
+            List<DeptPersonVO> targetDepartments,
+            Map<String, N> deptTreeNodeMap,
+            int limit,
+            DeptTreeNodeFactory<N> nodes) {
+        int remaining = limit;
+        for (DeptPersonVO deptPersonVO : targetDepartments) {
+            String deptCode = deptPersonVO.getBmdm();
+            N node = deptTreeNodeMap.get(deptCode);
+            if (node == null) {
+                log.error("部门树节点缓存中找不到,deptCode:{}", deptCode);
+                continue;
+            }
+            for (UserVo userVo : records.getUsersOfDept(deptCode)) {
+                if (remaining-- <= 0) {
+                    return;
+                }
+                nodes.addUser(node, userVo);
+            }
+        }
+    }
+
+    private static <N> void constructPath(
+            Map<String, AsDepart> deptMap,
+            Map<String, N> deptTreeNodeMap,
+            String deptCode,
+            DeptTreeNodeFactory<N> nodes) {
+        if (ConstantCommon.NO_DEPT.equals(deptCode)) {
+            return;
+        }
+        if (!deptTreeNodeMap.containsKey(deptCode)) {
+            AsDepart dept = deptMap.get(deptCode);
+            if (dept == null) {
+                log.error("从{}缓存中获取的map中，部门不存在，部门编号：{}", DEPART_MAP, deptCode);
+                return;
+            }
+            N node = nodes.create(dept);
+
+            deptTreeNodeMap.put(deptCode, node);
+            if (dept.getBmdm().equals(ROOT_DEPARTMENT_NUM)) {
+                log.debug("已经到达根节点，当前处理过的部门有：{}", deptTreeNodeMap.keySet());
+                return;
+            }
+            String parentDeptCode = dept.getSjbmdm();
+            if (deptMap.containsKey(parentDeptCode)) {
+                if (!deptTreeNodeMap.containsKey(parentDeptCode)) {
+                    constructPath(deptMap, deptTreeNodeMap, parentDeptCode, nodes);
+                }
+                N parent = deptTreeNodeMap.get(parentDeptCode);
+                nodes.addChild(parent, node);
+            } else {
+                log.error(
+                        "从{}缓存中获取的map中，上级部门不存在，当前部门编号：{}，上级部门编码：{}",
+                        DEPART_MAP,
+                        deptCode,
+                        parentDeptCode);
+            }
+        }
+    }
+}
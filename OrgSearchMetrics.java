@@ -0,0 +1,195 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 组织架构搜索的监控指标，通过 Actuator 暴露。
+ * <ul>
+ *     <li>org.search.latency：搜索各阶段耗时，phase 为 dept_index、user_index、assembly，
+ *     接口总耗时（含序列化）见 Actuator 自带的 http.server.requests；</li>
+ *     <li>org.search.hits：每次搜索命中的部门、人员数；</li>
+ *     <li>org.search.refresh：快照全量、增量刷新耗时，按结果区分，计数即成功、失败次数；</li>
+ *     <li>org.search.load：刷新时从数据库加载的耗时；</li>
+ *     <li>org.search.index.words、org.search.index.bytes：各搜索树的名称数与索引大小；</li>
+ *     <li>org.search.records：快照中的部门、人员数；</li>
+ *     <li>org.search.snapshot.age：快照数据距上次从数据库加载的秒数，用于发现刷新停滞；</li>
+ *     <li>org.search.query.cache：搜索树查询缓存的完全命中、前缀复用、未命中次数。</li>
+ * </ul>
+ */
+@Component
+public class OrgSearchMetrics {
+
+    public static final String PHASE_DEPT_INDEX = "dept_index";
+
+    public static final String PHASE_USER_INDEX = "user_index";
+
+    public static final String PHASE_ASSEMBLY = "assembly";
+
+    public static final String HITS_DEPT = "dept";
+
+    public static final String HITS_USER = "user";
+
+    public static final String REFRESH_FULL = "full";
+
+    public static final String REFRESH_CHANGES = "changes";
+
+    @Resource private MeterRegistry meterRegistry;
+
+    /**
+     * 各搜索阶段的耗时，启动时注册，每次搜索直接复用
+     */
+    private final Map<String, Timer> searchTimers = new HashMap<>();
+
+    /**
+     * 部门、人员的命中条数，启动时注册，每次搜索直接复用
+     */
+    private final Map<String, DistributionSummary> hitSummaries = new HashMap<>();
+
+    @PostConstruct
+    public void registerSearchMeters() {
+        for (String phase : new String[] {PHASE_DEPT_INDEX, PHASE_USER_INDEX, PHASE_ASSEMBLY}) {
+            searchTimers.put(
+                    phase,
+                    Timer.builder("org.search.latency")
+                            .tag("phase", phase)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+        }
+        for (String type : new String[] {HITS_DEPT, HITS_USER}) {
+            hitSummaries.put(
+                    type,
+                    DistributionSummary.builder("org.search.hits")
+                            .tag("type", type)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry));
+        }
+    }
+
+    /**
+     * 开始计时
+     *
+     * @return 计时器，结束时传给 {@link #stopSearch}
+     */
+    public Timer.Sample start() {
+        return Timer.start(meterRegistry);
+    }
+
+    /**
+     * 记录一个搜索阶段的耗时
+     *
+     * @param sample {@link #start()} 返回的计时器
+     * @param phase  阶段，取值见 PHASE_ 开头的常量
+     */
+    public void stopSearch(Timer.Sample sample, String phase) {
+        sample.stop(searchTimers.get(phase));
+    }
+
+    /**
+     * 记录一次搜索命中的条数
+     *
+     * @param type {@link #HITS_DEPT} 或 {@link #HITS_USER}
+     * @param hits 命中条数
+     */
+    public void recordHits(String type, int hits) {
+        hitSummaries.get(type).record(hits);
+    }
+
+    /**
+     * 记录一次快照刷新
+     *
+     * @param type    full 或 changes
+     * @param millis  耗时
+     * @param success 是否成功
+     */
+    public void recordRefresh(String type, long millis, boolean success) {
+        Timer.builder("org.search.refresh")
+                .tag("type", type)
+                .tag("outcome", success ? "success" : "failure")
+                .register(meterRegistry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录一次刷新从数据库加载的耗时
+     *
+     * @param type   full 或 changes
+     * @param millis 耗时
+     */
+    public void recordLoad(String type, long millis) {
+        Timer.builder("org.search.load")
+                .tag("type", type)
+                .register(meterRegistry)
+                .record(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册快照相关的指标，每次采集时读取当前快照
+     *
+     * @param snapshot     当前快照
+     * @param lastLoadTime 上次从数据库加载的时间
+     */
+    public void bindSnapshot(Supplier<OrgSearchSnapshot> snapshot, LongSupplier lastLoadTime) {
+        Gauge.builder(
+                        "org.search.snapshot.age",
+                        lastLoadTime,
+                        time -> time.getAsLong() == 0
+                                ? 0
+                                : (System.currentTimeMillis() - time.getAsLong()) / 1000.0)
+                .baseUnit("seconds")
+                .strongReference(true)
+                .register(meterRegistry);
+        Gauge.builder("org.search.snapshot.version", snapshot, s -> s.get().getVersion())
+                .strongReference(true)
+                .register(meterRegistry);
+        bindTree(snapshot, "uid", OrgSearchSnapshot::getUidTree);
+        bindTree(snapshot, "name", OrgSearchSnapshot::getNameTree);
+        bindTree(snapshot, "dept_name", OrgSearchSnapshot::getDeptNameTree);
+        Gauge.builder("org.search.records", snapshot, s -> s.get().getRecords().getDeptMap().size())
+                .tag("type", "dept")
+                .strongReference(true)
+                .register(meterRegistry);
+        Gauge.builder("org.search.records", snapshot, s -> s.get().getRecords().getUsers().size())
+                .tag("type", "user")
+                .strongReference(true)
+                .register(meterRegistry);
+        bindQueryCache("hit", QueryCache.HITS);
+        bindQueryCache("prefix_hit", QueryCache.PREFIX_HITS);
+        bindQueryCache("miss", QueryCache.MISSES);
+    }
+
+    private void bindQueryCache(String result, LongAdder counter) {
+        FunctionCounter.builder("org.search.query.cache", counter, LongAdder::doubleValue)
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private void bindTree(
+            Supplier<OrgSearchSnapshot> snapshot,
+            String index,
+            Function<OrgSearchSnapshot, FuzzySearchTree> tree) {
+        Gauge.builder("org.search.index.words", snapshot, s -> tree.apply(s.get()).getWordCount())
+                .tag("index", index)
+                .strongReference(true)
+                .register(meterRegistry);
+        Gauge.builder("org.search.index.bytes", snapshot, s -> tree.apply(s.get()).getIndexBytes())
+                .tag("index", index)
+                .baseUnit("bytes")
+                .strongReference(true)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,363 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.common.util.BeanCopierUtils;
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.DeptPersonVO;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import com.cestc.dc.repository.domain.vo.DeptInfoVo;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * 模糊搜索使用的内存部门、人员记录。
+ * <p>
+ * 与模糊搜索树同时构建，搜索树命中的 uid、姓名、部门名称直接在这里换成 {@link UserVo}、{@link AsDepart}，
+ * 一次搜索不再需要访问数据库。构建完成后只读，可被多个请求线程共享。
+ */
+public class OrgSearchRecords {
+
+    /**
+     * 部门编号 -> 部门
+     */
+    private final Map<String, AsDepart> deptMap;
+
+    /**
+     * 部门名称 -> 部门，部门名称可能重复
+     */
+    private final Map<String, List<AsDepart>> departsByName;
+
+    /**
+     * 部门编号 -> 对外提供的部门信息，与部门信息接口原来的转换方式一致，预先转换好
+     */
+    private final Map<String, DeptInfoVo> deptInfos;
+
+    /**
+     * 部门上下级关系索引
+     */
+    private final DeptHierarchyIndex deptIndex;
+
+    /**
+     * 全部在职人员
+     */
+    private final List<UserVo> users;
+
+    /**
+     * uid -> 人员
+     */
+    private final Map<String, UserVo> usersByUid;
+
+    /**
+     * 姓名 -> 人员，姓名可能重复
+     */
+    private final Map<String, List<UserVo>> usersByName;
+
+    /**
+     * 部门编号 -> 部门下的人员
+     */
+    private final Map<String, List<UserVo>> usersByDept;
+
+    /**
+     * 使用部门与人员构建内存记录。
+     *
+     * @param departs 在用部门
+     * @param users   在职人员
+     */
+    public OrgSearchRecords(Collection<AsDepart> departs, List<UserVo> users) {
+        Map<String, AsDepart> deptMap = new HashMap<>(departs.size() * 2);
+        Map<String, List<AsDepart>> departsByName = new HashMap<>(departs.size() * 2);
+        for (AsDepart depart : departs) {
+            deptMap.put(depart.getBmdm(), depart);
+            if (StringUtils.isNotBlank(depart.getBmmc())) {
+                departsByName.computeIfAbsent(depart.getBmmc(), k -> new ArrayList<>(1)).add(depart);
+            }
+        }
+        Map<String, UserVo> usersByUid = new HashMap<>(users.size() * 2);
+        Map<String, List<UserVo>> usersByName = new HashMap<>(users.size() * 2);
+        Map<String, List<UserVo>> usersByDept = new HashMap<>(departs.size() * 2);
+        for (UserVo user : users) {
+            if (StringUtils.isNotBlank(user.getUid())) {
+                usersByUid.put(user.getUid(), user);
+            }
+            if (StringUtils.isNotBlank(user.getDisplayName())) {
+                usersByName.computeIfAbsent(user.getDisplayName(), k -> new ArrayList<>(1)).add(user);
+            }
+            if (user.getDepartmentNumber() != null) {
+                usersByDept.computeIfAbsent(user.getDepartmentNumber(), k -> new ArrayList<>()).add(user);
+            }
+        }
+        this.deptMap = Collections.unmodifiableMap(deptMap);
+        this.departsByName = departsByName;
+        this.deptInfos = toDeptInfos(deptMap.values());
+        this.deptIndex = new DeptHierarchyIndex(deptMap.values());
+        this.users = Collections.unmodifiableList(new ArrayList<>(users));
+        this.usersByUid = usersByUid;
+        this.usersByName = usersByName;
+        this.usersByDept = usersByDept;
+    }
+
+    private OrgSearchRecords(
+            Map<String, AsDepart> deptMap,
+            Map<String, List<AsDepart>> departsByName,
+            Map<String, DeptInfoVo> deptInfos,
+            DeptHierarchyIndex deptIndex,
+            List<UserVo> users,
+            Map<String, UserVo> usersByUid,
+            Map<String, List<UserVo>> usersByName,
+            Map<String, List<UserVo>> usersByDept) {
+        this.deptMap = deptMap;
+        this.departsByName = departsByName;
+        this.deptInfos = deptInfos;
+        this.deptIndex = deptIndex;
+        this.users = users;
+        this.usersByUid = usersByUid;
+        this.usersByName = usersByName;
+        this.usersByDept = usersByDept;
+    }
+
+    /**
+     * 在当前记录的基础上应用增量变更，返回新的记录，当前记录保持不变。
+     * <p>
+     * 写时复制：只复制涉及变更的映射，映射中只替换变更名称、部门对应的列表，其余直接与当前记录共用。
+     * 部门没有变更时部门映射与上下级关系索引原样复用，人员没有变更时人员映射原样复用；
+     * 部门信息只转换变更的部门。
+     *
+     * @param changedDeparts   新增或修改的在用部门
+     * @param removedDeptCodes 已删除或停用的部门编号
+     * @param changedUsers     新增或修改的在职人员
+     * @param removedUids      已离职或删除的人员 uid
+     * @return 应用变更后的新记录
+     */
+    public OrgSearchRecords withChanges(
+            List<AsDepart> changedDeparts,
+            Set<String> removedDeptCodes,
+            List<UserVo> changedUsers,
+            Set<String> removedUids) {
+        Map<String, AsDepart> newDeptMap = deptMap;
+        Map<String, List<AsDepart>> newDepartsByName = departsByName;
+        Map<String, DeptInfoVo> newDeptInfos = deptInfos;
+        DeptHierarchyIndex newDeptIndex = deptIndex;
+        if (!changedDeparts.isEmpty() || !removedDeptCodes.isEmpty()) {
+            Map<String, AsDepart> departs = new HashMap<>(deptMap);
+            Map<String, List<AsDepart>> byName = new HashMap<>(departsByName);
+            Map<String, DeptInfoVo> infos = new HashMap<>(deptInfos);
+            Set<String> touchedCodes = new HashSet<>(removedDeptCodes);
+            changedDeparts.forEach(depart -> touchedCodes.add(depart.getBmdm()));
+            for (String deptCode : touchedCodes) {
+                AsDepart old = departs.remove(deptCode);
+                if (old != null) {
+                    removeFrom(byName, old.getBmmc(), depart -> deptCode.equals(depart.getBmdm()));
+                }
+                infos.remove(deptCode);
+            }
+            for (AsDepart depart : changedDeparts) {
+                departs.put(depart.getBmdm(), depart);
+                if (StringUtils.isNotBlank(depart.getBmmc())) {
+                    addTo(byName, depart.getBmmc(), depart);
+                }
+            }
+            infos.putAll(toDeptInfos(changedDeparts));
+            newDeptMap = Collections.unmodifiableMap(departs);
+            newDepartsByName = byName;
+            newDeptInfos = infos;
+            newDeptIndex = new DeptHierarchyIndex(departs.values());
+        }
+
+        List<UserVo> newUsers = users;
+        Map<String, UserVo> newUsersByUid = usersByUid;
+        Map<String, List<UserVo>> newUsersByName = usersByName;
+        Map<String, List<UserVo>> newUsersByDept = usersByDept;
+        if (!changedUsers.isEmpty() || !removedUids.isEmpty()) {
+            Map<String, UserVo> byUid = new HashMap<>(usersByUid);
+            Map<String, List<UserVo>> byName = new HashMap<>(usersByName);
+            Map<String, List<UserVo>> byDept = new HashMap<>(usersByDept);
+            Set<String> touchedUids = new HashSet<>(removedUids);
+            changedUsers.forEach(user -> touchedUids.add(user.getUid()));
+            for (String uid : touchedUids) {
+                UserVo old = byUid.remove(uid);
+                if (old != null) {
+                    removeFrom(byName, old.getDisplayName(), user -> uid.equals(user.getUid()));
+                    removeFrom(byDept, old.getDepartmentNumber(), user -> uid.equals(user.getUid()));
+                }
+            }
+            List<UserVo> list = new ArrayList<>(users.size() + changedUsers.size());
+            for (UserVo user : users) {
+                if (!touchedUids.contains(user.getUid())) {
+                    list.add(user);
+                }
+            }
+            for (UserVo user : changedUsers) {
+                list.add(user);
+                if (StringUtils.isNotBlank(user.getUid())) {
+                    byUid.put(user.getUid(), user);
+                }
+                if (StringUtils.isNotBlank(user.getDisplayName())) {
+                    addTo(byName, user.getDisplayName(), user);
+                }
+                if (user.getDepartmentNumber() != null) {
+                    addTo(byDept, user.getDepartmentNumber(), user);
+                }
+            }
+            newUsers = Collections.unmodifiableList(list);
+            newUsersByUid = byUid;
+            newUsersByName = byName;
+            newUsersByDept = byDept;
+        }
+        return new OrgSearchRecords(
+                newDeptMap,
+                newDepartsByName,
+                newDeptInfos,
+                newDeptIndex,
+                newUsers,
+                newUsersByUid,
+                newUsersByName,
+                newUsersByDept);
+    }
+
+    /**
+     * 从已复制的映射中移除元素：列表与当前记录共用，先复制再修改，移除后为空时删除该键
+     */
+    private static <T> void removeFrom(Map<String, List<T>> map, String key, Predicate<T> matcher) {
+        List<T> values = key == null ? null : map.get(key);
+        if (values == null) {
+            return;
+        }
+        List<T> copy = new ArrayList<>(values);
+        copy.removeIf(matcher);
+        if (copy.isEmpty()) {
+            map.remove(key);
+        } else {
+            map.put(key, copy);
+        }
+    }
+
+    /**
+     * 向已复制的映射中添加元素：列表与当前记录共用，先复制再修改
+     */
+    private static <T> void addTo(Map<String, List<T>> map, String key, T value) {
+        List<T> values = map.get(key);
+        List<T> copy = values == null ? new ArrayList<>(1) : new ArrayList<>(values);
+        copy.add(value);
+        map.put(key, copy);
+    }
+
+    /**
+     * 部门先转成 DeptPersonVO 再复制成 DeptInfoVo，copyList2List 保持顺序，按下标对应回部门编号
+     */
+    private static Map<String, DeptInfoVo> toDeptInfos(Collection<AsDepart> departs) {
+        List<DeptPersonVO> deptVos = departs.stream().map(DeptPersonVO::new).collect(Collectors.toList());
+        List<DeptInfoVo> infos = BeanCopierUtils.copyList2List(deptVos, DeptInfoVo.class, true);
+        Map<String, DeptInfoVo> result = new HashMap<>(deptVos.size() * 2);
+        for (int i = 0; i < deptVos.size(); i++) {
+            result.put(deptVos.get(i).getBmdm(), infos.get(i));
+        }
+        return result;
+    }
+
+    public Map<String, AsDepart> getDeptMap() {
+        return deptMap;
+    }
+
+    public DeptHierarchyIndex getDeptIndex() {
+        return deptIndex;
+    }
+
+    public List<UserVo> getUsers() {
+        return users;
+    }
+
+    public List<String> getUids() {
+        return new ArrayList<>(usersByUid.keySet());
+    }
+
+    public List<String> getDisplayNames() {
+        return new ArrayList<>(usersByName.keySet());
+    }
+
+    public List<String> getDeptNames() {
+        return new ArrayList<>(departsByName.keySet());
+    }
+
+    /**
+     * 按部门名称查找部门，保持名称的先后顺序。
+     *
+     * @param deptNames 部门名称，一般为模糊搜索树的命中结果
+     * @return 部门列表
+     */
+    public List<AsDepart> findDepartsByNames(List<String> deptNames) {
+        List<AsDepart> result = new ArrayList<>(deptNames.size());
+        for (String deptName : deptNames) {
+            result.addAll(departsByName.getOrDefault(deptName, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    /**
+     * 按 uid 与姓名查找人员，uid 命中在前，按命中顺序去重，最多返回 limit 个。
+     *
+     * @param uids  uid，一般为模糊搜索树的命中结果
+     * @param names 姓名，一般为模糊搜索树的命中结果
+     * @param limit 最大返回人数
+     * @return 人员列表
+     */
+    public List<UserVo> findUsers(List<String> uids, List<String> names, int limit) {
+        Set<UserVo> result = new LinkedHashSet<>();
+        for (String uid : uids) {
+            if (result.size() >= limit) {
+                return new ArrayList<>(result);
+            }
+            UserVo user = usersByUid.get(uid);
+            if (user != null) {
+                result.add(user);
+            }
+        }
+        for (String name : names) {
+            for (UserVo user : usersByName.getOrDefault(name, Collections.emptyList())) {
+                if (result.size() >= limit) {
+                    return new ArrayList<>(result);
+                }
+                result.add(user);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * 按部门编号批量获取部门信息，按编号的先后顺序去重，不存在的编号忽略。
+     * 快照中预先转换好的部门信息由所有请求共享，返回的是其副本，调用方修改不会影响快照。
+     *
+     * @param deptNums 部门编号
+     * @return 部门信息列表
+     */
+    public List<DeptInfoVo> findDeptInfos(Collection<String> deptNums) {
+        List<DeptInfoVo> shared = new ArrayList<>(deptNums.size());
+        for (String deptNum : new LinkedHashSet<>(deptNums)) {
+            DeptInfoVo info = deptInfos.get(deptNum);
+            if (info != null) {
+                shared.add(info);
+            }
+        }
+        return BeanCopierUtils.copyList2List(shared, DeptInfoVo.class, true);
+    }
+
+    /**
+     * 获取有直属人员的部门编号。
+     *
+     * @return 部门编号集合
+     */
+    public Set<String> getDeptCodesWithUsers() {
+        return Collections.unmodifiableSet(usersByDept.keySet());
+    }
+
+    /**
+     * 获取部门下的直属人员。
+     *
+     * @param deptCode 部门编号
+     * @return 人员列表，不存在时为空列表
+     */
+    public List<UserVo> getUsersOfDept(String deptCode) {
+        return usersByDept.getOrDefault(deptCode, Collections.emptyList());
+    }
+}
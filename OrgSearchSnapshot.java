@@ -0,0 +1,486 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.common.domain.ConstantCommon;
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.DepartTreeNode;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.cestc.dc.common.domain.ConstantCommon.ROOT_DEPARTMENT_NUM;
+
+/**
+ * 组织架构搜索快照：uid、姓名、部门名称三棵模糊搜索树，内存部门人员记录，
+ * 部门服务与组织树服务各自类型的全量部门树，以及前者预先序列化的响应。
+ * <p>
+ * 快照在定时任务线程上完整构建后一次性发布，发布后不再修改；请求线程只读取，
+ * 同一次请求内拿到的各索引始终属于同一版本。全量部门树同样视为只读，调用方不得修改。
+ * <p>
+ * 增量刷新通过 {@link #withChanges} 生成新快照：全量构建的基础搜索树原样复用，
+ * 自上次全量构建以来变更过的 uid、姓名、部门名称另建小的增量搜索树，查询时合并两者结果。
+ * 基础搜索树中已过期的名称在内存记录中找不到对应部门或人员，会被自然过滤。
+ * <p>
+ * 全量部门树及其序列化响应随快照一起在定时任务线程上拼装、序列化，全量构建与增量刷新都一样；
+ * 请求线程只读取现成的结果，不会阻塞，也不会触发拼装或序列化。
+ */
+@Slf4j
+public class OrgSearchSnapshot {
+
+    /**
+     * 首次构建完成前使用的空快照
+     */
+    public static final OrgSearchSnapshot EMPTY =
+            new OrgSearchSnapshot(
+                    0L,
+                    new OrgSearchRecords(Collections.emptyList(), Collections.emptyList()),
+                    new FuzzySearchTree(Collections.emptyList(), false),
+                    new FuzzySearchTree(Collections.emptyList(), true),
+                    new FuzzySearchTree(Collections.emptyList(), false),
+                    SearchDelta.EMPTY);
+
+    private final long version;
+
+    private final long createTime;
+
+    private final OrgSearchRecords records;
+
+    private final FuzzySearchTree uidTree;
+
+    private final FuzzySearchTree nameTree;
+
+    private final FuzzySearchTree deptNameTree;
+
+    private final SearchDelta delta;
+
+    /**
+     * 全量部门树，构建快照时拼装
+     */
+    private final DepartTreeNode fullTree;
+
+    /**
+     * 全量部门树的序列化响应，构建快照时生成
+     */
+    private final FullTreeResponse fullTreeResponse;
+
+    /**
+     * 组织树服务返回的全量部门树，构建快照时拼装
+     */
+    private final com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode orgFullTree;
+
+    private OrgSearchSnapshot(
+            long version,
+            OrgSearchRecords records,
+            FuzzySearchTree uidTree,
+            FuzzySearchTree nameTree,
+            FuzzySearchTree deptNameTree,
+            SearchDelta delta) {
+        this.version = version;
+        this.createTime = System.currentTimeMillis();
+        this.records = records;
+        this.uidTree = uidTree;
+        this.nameTree = nameTree;
+        this.deptNameTree = deptNameTree;
+        this.delta = delta;
+        this.fullTree = buildFullTree(records, DeptTreeNodeFactory.DEPART_TREE_NODE);
+        this.fullTreeResponse = FullTreeResponse.render(fullTree);
+        this.orgFullTree = buildFullTree(records, DeptTreeNodeFactory.ORG_TREE_NODE);
+    }
+
+    /**
+     * 自上次全量构建以来变更过的名称及其增量搜索树
+     */
+    private static final class SearchDelta {
+
+        static final SearchDelta EMPTY =
+                new SearchDelta(Collections.emptySet(), Collections.emptySet(), Collections.emptySet());
+
+        final Set<String> uids;
+
+        final Set<String> names;
+
+        final Set<String> deptNames;
+
+        final FuzzySearchTree uidTree;
+
+        final FuzzySearchTree nameTree;
+
+        final FuzzySearchTree deptNameTree;
+
+        SearchDelta(Set<String> uids, Set<String> names, Set<String> deptNames) {
+            this(
+                    uids,
+                    names,
+                    deptNames,
+                    new FuzzySearchTree(new ArrayList<>(uids), false),
+                    new FuzzySearchTree(new ArrayList<>(names), true),
+                    new FuzzySearchTree(new ArrayList<>(deptNames), false));
+        }
+
+        private SearchDelta(
+                Set<String> uids,
+                Set<String> names,
+                Set<String> deptNames,
+                FuzzySearchTree uidTree,
+                FuzzySearchTree nameTree,
+                FuzzySearchTree deptNameTree) {
+            this.uids = uids;
+            this.names = names;
+            this.deptNames = deptNames;
+            this.uidTree = uidTree;
+            this.nameTree = nameTree;
+            this.deptNameTree = deptNameTree;
+        }
+
+        boolean isEmpty() {
+            return uids.isEmpty() && names.isEmpty() && deptNames.isEmpty();
+        }
+
+        /**
+         * 加入新变更的名称，只重建名称集合有变化的增量搜索树，其余原样复用
+         */
+        SearchDelta with(List<UserVo> changedUsers, List<AsDepart> changedDeparts) {
+            Set<String> newUids = new HashSet<>(uids);
+            Set<String> newNames = new HashSet<>(names);
+            Set<String> newDeptNames = new HashSet<>(deptNames);
+            changedUsers.forEach(
+                    user -> {
+                        newUids.add(user.getUid());
+                        newNames.add(user.getDisplayName());
+                    });
+            changedDeparts.forEach(depart -> newDeptNames.add(depart.getBmmc()));
+            return new SearchDelta(
+                    newUids,
+                    newNames,
+                    newDeptNames,
+                    newUids.size() == uids.size() ? uidTree : new FuzzySearchTree(new ArrayList<>(newUids), false),
+                    newNames.size() == names.size() ? nameTree : new FuzzySearchTree(new ArrayList<>(newNames), true),
+                    newDeptNames.size() == deptNames.size()
+                            ? deptNameTree
+                            : new FuzzySearchTree(new ArrayList<>(newDeptNames), false));
+        }
+    }
+
+    /**
+     * 使用部门与人员构建完整快照，三棵搜索树同时构建。
+     *
+     * @param version 快照版本号
+     * @param departs 在用部门
+     * @param users   在职人员
+     * @return 快照
+     */
+    public static OrgSearchSnapshot build(long version, Collection<AsDepart> departs, List<UserVo> users) {
+        OrgSearchRecords records = new OrgSearchRecords(departs, users);
+
+        long start = System.currentTimeMillis();
+        CompletableFuture<FuzzySearchTree> deptNameTree =
+                buildAsync("部门名称", () -> new FuzzySearchTree(records.getDeptNames(), false));
+        CompletableFuture<FuzzySearchTree> uidTree =
+                buildAsync("uid", () -> new FuzzySearchTree(records.getUids(), false));
+        CompletableFuture<FuzzySearchTree> nameTree =
+                buildAsync("人员名称", () -> new FuzzySearchTree(records.getDisplayNames(), true));
+        CompletableFuture.allOf(deptNameTree, uidTree, nameTree).join();
+        log.info("模糊搜索树全部生成完成，耗时：{}ms", System.currentTimeMillis() - start);
+
+        return restore(version, records, uidTree.join(), nameTree.join(), deptNameTree.join());
+    }
+
+    /**
+     * 在 ForkJoin 公共池中构建一棵搜索树，树内部的并行任务也在同一个池中执行
+     */
+    private static CompletableFuture<FuzzySearchTree> buildAsync(String name, Supplier<FuzzySearchTree> builder) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    long start = System.currentTimeMillis();
+                    FuzzySearchTree tree = builder.get();
+                    log.info(
+                            "生成{}模糊搜索树完成，名称：{}，后缀：{}，索引大小：{}字节，耗时：{}ms",
+                            name,
+                            tree.getWordCount(),
+                            tree.getSuffixCount(),
+                            tree.getIndexBytes(),
+                            System.currentTimeMillis() - start);
+                    return tree;
+                });
+    }
+
+    /**
+     * 使用已构建好的搜索树恢复快照，只重建内存记录，用于从快照文件启动。
+     *
+     * @param version      快照版本号
+     * @param departs      在用部门
+     * @param users        在职人员
+     * @param uidTree      uid 搜索树
+     * @param nameTree     姓名搜索树
+     * @param deptNameTree 部门名称搜索树
+     * @return 快照
+     */
+    static OrgSearchSnapshot restore(
+            long version,
+            Collection<AsDepart> departs,
+            List<UserVo> users,
+            FuzzySearchTree uidTree,
+            FuzzySearchTree nameTree,
+            FuzzySearchTree deptNameTree) {
+        return restore(version, new OrgSearchRecords(departs, users), uidTree, nameTree, deptNameTree);
+    }
+
+    private static OrgSearchSnapshot restore(
+            long version,
+            OrgSearchRecords records,
+            FuzzySearchTree uidTree,
+            FuzzySearchTree nameTree,
+            FuzzySearchTree deptNameTree) {
+        return new OrgSearchSnapshot(version, records, uidTree, nameTree, deptNameTree, SearchDelta.EMPTY);
+    }
+
+    /**
+     * 在当前快照上应用增量变更，生成新快照；基础搜索树直接复用，内存记录写时复制，
+     * 只重建名称有变化的增量搜索树；全量部门树在调用线程（定时任务线程）上重新拼装并序列化，发布前即已就绪。
+     *
+     * @param version          新快照版本号
+     * @param changedDeparts   新增或修改的在用部门
+     * @param removedDeptCodes 已删除或停用的部门编号
+     * @param changedUsers     新增或修改的在职人员
+     * @param removedUids      已离职或删除的人员 uid
+     * @return 新快照
+     */
+    public OrgSearchSnapshot withChanges(
+            long version,
+            List<AsDepart> changedDeparts,
+            Set<String> removedDeptCodes,
+            List<UserVo> changedUsers,
+            Set<String> removedUids) {
+        OrgSearchRecords newRecords =
+                records.withChanges(changedDeparts, removedDeptCodes, changedUsers, removedUids);
+        SearchDelta newDelta = delta.with(changedUsers, changedDeparts);
+        return new OrgSearchSnapshot(version, newRecords, uidTree, nameTree, deptNameTree, newDelta);
+    }
+
+    /**
+     * 并行构建全量部门树，各阶段之间没有共享的可变状态：
+     * 先一次性创建全部部门节点，再按上级部门分组挂载子部门（每个上级节点只由一个任务修改），
+     * 最后按部门挂载已分组的人员（每个部门节点只由一个任务修改）。
+     *
+     * @param records 内存部门人员记录
+     * @param nodes   部门树节点的创建与挂载方式
+     * @param <N>     部门树节点类型
+     * @return 部门树根节点
+     */
+    static <N> N buildFullTree(OrgSearchRecords records, DeptTreeNodeFactory<N> nodes) {
+        log.info("开始初始化全量部门树");
+        long start = System.currentTimeMillis();
+        Map<String, AsDepart> deptMap = records.getDeptMap();
+        Map<String, N> deptTreeNodeMap =
+                deptMap.values().parallelStream()
+                        .collect(Collectors.toMap(AsDepart::getBmdm, nodes::create));
+
+        Map<String, List<AsDepart>> childrenByParent =
+                deptMap.values().stream()
+                        .filter(dept -> !ROOT_DEPARTMENT_NUM.equals(dept.getBmdm()))
+                        .filter(dept -> dept.getSjbmdm() != null)
+                        .collect(Collectors.groupingBy(AsDepart::getSjbmdm));
+        childrenByParent.entrySet().parallelStream()
+                .forEach(
+                        entry -> {
+                            N parent = deptTreeNodeMap.get(entry.getKey());
+                            if (parent == null) {
+                                log.error(
+                                        "上级部门不存在，上级部门编码：{}，下级部门数：{}",
+                                        entry.getKey(),
+                                        entry.getValue().size());
+                                return;
+                            }
+                            entry.getValue()
+                                    .forEach(
+                                            child ->
+                                                    nodes.addChild(
+                                                            parent, deptTreeNodeMap.get(child.getBmdm())));
+                        });
+
+        deptTreeNodeMap.entrySet().parallelStream()
+                .forEach(
+                        entry -> {
+                            N node = entry.getValue();
+                            records.getUsersOfDept(entry.getKey()).forEach(user -> nodes.addUser(node, user));
+                        });
+        long orphanDepts =
+                records.getDeptCodesWithUsers().stream()
+                        .filter(deptCode -> !ConstantCommon.NO_DEPT.equals(deptCode))
+                        .filter(deptCode -> !deptTreeNodeMap.containsKey(deptCode))
+                        .count();
+        if (orphanDepts > 0) {
+            log.error("人员所在部门在部门树中找不到，涉及部门数：{}，这些人员未挂载", orphanDepts);
+        }
+
+        N fullTree = OrgSearchEngine.rootOf(deptTreeNodeMap, nodes);
+        log.info("初始化全量部门树完成，耗时：{}ms", System.currentTimeMillis() - start);
+        return fullTree;
+    }
+
+    /**
+     * 按 uid 模糊搜索，合并增量与基础搜索树的结果
+     */
+    public List<String> searchUids(String keyword, int limit) {
+        return searchUids(keyword, limit, 0);
+    }
+
+    /**
+     * 按 uid 模糊搜索，子串命中不足 limit 条时补充编辑距离不超过 maxDistance 的结果
+     */
+    public List<String> searchUids(String keyword, int limit, int maxDistance) {
+        return search(delta.uidTree, uidTree, keyword, limit, maxDistance);
+    }
+
+    /**
+     * 按姓名（含拼音）模糊搜索，合并增量与基础搜索树的结果
+     */
+    public List<String> searchDisplayNames(String keyword, int limit) {
+        return searchDisplayNames(keyword, limit, 0);
+    }
+
+    /**
+     * 按姓名（含拼音）模糊搜索，子串命中不足 limit 条时补充编辑距离不超过 maxDistance 的结果
+     */
+    public List<String> searchDisplayNames(String keyword, int limit, int maxDistance) {
+        return search(delta.nameTree, nameTree, keyword, limit, maxDistance);
+    }
+
+    /**
+     * 按部门名称模糊搜索，合并增量与基础搜索树的结果
+     */
+    public List<String> searchDeptNames(String keyword, int limit) {
+        return searchDeptNames(keyword, limit, 0);
+    }
+
+    /**
+     * 按部门名称模糊搜索，子串命中不足 limit 条时补充编辑距离不超过 maxDistance 的结果
+     */
+    public List<String> searchDeptNames(String keyword, int limit, int maxDistance) {
+        return search(delta.deptNameTree, deptNameTree, keyword, limit, maxDistance);
+    }
+
+    /**
+     * 增量与基础搜索树的命中按各自的排序 key（档位、名称长度）归并，与只有一棵搜索树时的排序一致；
+     * 档位与长度相同时增量命中在前。两棵树中都有的名称只保留一次。
+     */
+    private List<String> search(
+            FuzzySearchTree deltaTree,
+            FuzzySearchTree baseTree,
+            String keyword,
+            int limit,
+            int maxDistance) {
+        if (delta.isEmpty()) {
+            return baseTree.search(keyword, limit, maxDistance);
+        }
+        long[] deltaKeys = deltaTree.searchKeys(keyword, limit, maxDistance);
+        long[] baseKeys = baseTree.searchKeys(keyword, limit, maxDistance);
+        Set<String> result = new LinkedHashSet<>();
+        int i = 0;
+        int j = 0;
+        while (result.size() < limit && (i < deltaKeys.length || j < baseKeys.length)) {
+            if (j == baseKeys.length
+                    || (i < deltaKeys.length && FuzzySearchTree.compareRank(deltaKeys[i], baseKeys[j]) <= 0)) {
+                result.add(deltaTree.wordOfKey(deltaKeys[i++]));
+            } else {
+                result.add(baseTree.wordOfKey(baseKeys[j++]));
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /**
+     * 按需加载部门树：返回部门自身及 depth 层以内的下级部门，每个部门附带一页直属人员。
+     * userOffset 只作用于请求的部门自身，下级部门的直属人员总是从第一位开始，
+     * 需要翻页时以该部门编号、深度 0 再次请求。
+     *
+     * @param deptCode   部门编号
+     * @param depth      加载深度，0 表示只返回部门自身
+     * @param userOffset 请求部门直属人员的起始位置
+     * @param userLimit  每个部门直属人员的返回条数
+     * @return 部门节点，部门不存在时为 null
+     */
+    public DeptSubtreeNode getSubtree(String deptCode, int depth, int userOffset, int userLimit) {
+        AsDepart depart = records.getDeptMap().get(deptCode);
+        if (depart == null) {
+            return null;
+        }
+        List<String> childCodes = records.getDeptIndex().getChildren(deptCode);
+        List<UserVo> users = records.getUsersOfDept(deptCode);
+        int from = Math.min(userOffset, users.size());
+        int to = (int) Math.min(users.size(), (long) from + userLimit);
+
+        DeptSubtreeNode node = new DeptSubtreeNode();
+        node.setDeptCode(deptCode);
+        node.setDeptName(depart.getBmmc());
+        node.setParentCode(depart.getSjbmdm());
+        node.setChildCount(childCodes.size());
+        node.setUserCount(users.size());
+        node.setUsers(new ArrayList<>(users.subList(from, to)));
+        if (depth > 0) {
+            List<DeptSubtreeNode> children = new ArrayList<>(childCodes.size());
+            for (String childCode : childCodes) {
+                DeptSubtreeNode child = getSubtree(childCode, depth - 1, 0, userLimit);
+                if (child != null) {
+                    children.add(child);
+                }
+            }
+            node.setChildren(children);
+        }
+        return node;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public OrgSearchRecords getRecords() {
+        return records;
+    }
+
+    public FuzzySearchTree getUidTree() {
+        return uidTree;
+    }
+
+    public FuzzySearchTree getNameTree() {
+        return nameTree;
+    }
+
+    public FuzzySearchTree getDeptNameTree() {
+        return deptNameTree;
+    }
+
+    /**
+     * 获取全量部门树
+     *
+     * @return 全量部门树根节点
+     */
+    public DepartTreeNode getFullTree() {
+        return fullTree;
+    }
+
+    /**
+     * 获取全量部门树的序列化响应
+     *
+     * @return 预先序列化的响应
+     */
+    public FullTreeResponse getFullTreeResponse() {
+        return fullTreeResponse;
+    }
+
+    /**
+     * 获取组织树服务使用的全量部门树
+     *
+     * @return 全量部门树根节点
+     */
+    public com.cestc.dc.repository.domain.entity.orgTree.DepartTreeNode getOrgFullTree() {
+        return orgFullTree;
+    }
+}
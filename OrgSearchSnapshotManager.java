@@ -0,0 +1,235 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.common.domain.ConstantCommon;
+import com.cestc.dc.common.enums.StatusEnum;
+import com.cestc.dc.repository.dao.AsDepartMapper;
+import com.cestc.dc.repository.dao.UserPwdDao;
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.UserPwd;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import tk.mybatis.mapper.entity.Example;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * 组织架构搜索快照的唯一持有者。
+ * <p>
+ * 只有定时任务线程构建快照，构建完成后通过一次引用替换发布；请求线程调用 {@link #get()}
+ * 读取当前快照，不会阻塞，也不会触发重建。首次构建完成前返回 {@link OrgSearchSnapshot#EMPTY}。
+ * <p>
+ * 平时由 {@link #refreshChanges()} 按更新时间拉取上次加载以来变更的部门和人员，增量生成新快照；
+ * {@link #refresh()} 全量重建只作为定期的一致性校正。
+ * <p>
+ * 每次全量重建后把快照保存到本地文件，重启时先从文件恢复，启动后即可搜索，
+ * 再由增量刷新追上文件保存以来的变更，全量重建在后台完成后替换。
+ */
+@Slf4j
+@Component
+public class OrgSearchSnapshotManager {
+
+    @Resource private AsDepartMapper departMapper;
+
+    @Resource private UserPwdDao userPwdDao;
+
+    @Resource private OrgSearchMetrics metrics;
+
+    /**
+     * 增量查询向前多取的时间窗口，避免数据库与应用服务器时钟偏差或事务延迟提交导致漏数据
+     */
+    private static final long CHANGE_OVERLAP_MILLIS = 1000 * 60;
+
+    /**
+     * 快照文件最长可用时间，超过后重启时不再恢复，等待全量构建
+     */
+    private static final long SNAPSHOT_FILE_MAX_AGE_MILLIS = 1000 * 60 * 60 * 6;
+
+    /**
+     * 快照文件所在目录，未配置时不保存也不恢复快照文件
+     */
+    @Value("${org-search.snapshot-dir:}")
+    private String snapshotDir;
+
+    /**
+     * 快照文件，未配置目录或部门、人员不支持紧凑编码时为 null
+     */
+    private OrgSearchSnapshotStore store;
+
+    private final AtomicReference<OrgSearchSnapshot> current =
+            new AtomicReference<>(OrgSearchSnapshot.EMPTY);
+
+    /**
+     * 上一次从数据库加载（全量或增量）的开始时间
+     */
+    private volatile long lastLoadTime;
+
+    /**
+     * 启动时从快照文件恢复，首次全量构建完成前即可提供搜索
+     */
+    @PostConstruct
+    public void restore() {
+        metrics.bindSnapshot(this::get, () -> lastLoadTime);
+        if (StringUtils.isBlank(snapshotDir)) {
+            log.info("未配置 org-search.snapshot-dir，不使用组织架构搜索快照文件");
+            return;
+        }
+        OrgSearchSnapshotStore snapshotStore =
+                new OrgSearchSnapshotStore(Paths.get(snapshotDir), SNAPSHOT_FILE_MAX_AGE_MILLIS);
+        if (!snapshotStore.isEnabled()) {
+            return;
+        }
+        store = snapshotStore;
+        OrgSearchSnapshotStore.Stored stored = store.load();
+        if (stored == null) {
+            return;
+        }
+        synchronized (this) {
+            if (current.get() == OrgSearchSnapshot.EMPTY) {
+                current.set(stored.getSnapshot());
+                lastLoadTime = stored.getLoadTime();
+            }
+        }
+    }
+
+    /**
+     * 获取当前快照
+     *
+     * @return 当前快照，首次构建完成前为空快照
+     */
+    public OrgSearchSnapshot get() {
+        return current.get();
+    }
+
+    /**
+     * 全量重建，作为增量刷新的定期一致性校正
+     */
+    @Scheduled(fixedDelay = 1000 * 60 * 60)
+    public synchronized void refresh() {
+        long start = System.currentTimeMillis();
+        try {
+            List<AsDepart> departs = loadLiveDeparts();
+            List<UserVo> users = loadLiveUsers();
+            metrics.recordLoad(OrgSearchMetrics.REFRESH_FULL, System.currentTimeMillis() - start);
+            log.info("加载部门与人员完成，耗时：{}ms", System.currentTimeMillis() - start);
+            OrgSearchSnapshot snapshot =
+                    OrgSearchSnapshot.build(current.get().getVersion() + 1, departs, users);
+            current.set(snapshot);
+            lastLoadTime = start;
+            metrics.recordRefresh(OrgSearchMetrics.REFRESH_FULL, System.currentTimeMillis() - start, true);
+            log.info(
+                    "组织架构搜索快照发布完成，版本：{}，耗时：{}ms",
+                    snapshot.getVersion(),
+                    System.currentTimeMillis() - start);
+            if (store != null) {
+                store.save(snapshot, start);
+            }
+        } catch (Exception e) {
+            metrics.recordRefresh(OrgSearchMetrics.REFRESH_FULL, System.currentTimeMillis() - start, false);
+            log.error("组织架构搜索快照构建失败，继续使用版本：{}", current.get().getVersion(), e);
+        }
+    }
+
+    /**
+     * 增量刷新：只加载上次加载以来更新过的部门和人员，在当前快照上生成新快照。
+     * 新快照的全量部门树及其序列化响应在本线程上生成，发布后请求线程直接使用
+     */
+    @Scheduled(initialDelay = 1000 * 30, fixedDelay = 1000 * 30)
+    public synchronized void refreshChanges() {
+        OrgSearchSnapshot snapshot = current.get();
+        if (snapshot == OrgSearchSnapshot.EMPTY) {
+            // 全量构建尚未完成
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            Date since = new Date(lastLoadTime - CHANGE_OVERLAP_MILLIS);
+            List<AsDepart> changedDeparts = loadChangedDeparts(since);
+            List<UserPwd> changedUsers = loadChangedUsers(since);
+            metrics.recordLoad(OrgSearchMetrics.REFRESH_CHANGES, System.currentTimeMillis() - start);
+            if (changedDeparts.isEmpty() && changedUsers.isEmpty()) {
+                lastLoadTime = start;
+                metrics.recordRefresh(OrgSearchMetrics.REFRESH_CHANGES, System.currentTimeMillis() - start, true);
+                return;
+            }
+            List<AsDepart> liveDeparts = new ArrayList<>();
+            Set<String> removedDeptCodes = new HashSet<>();
+            changedDeparts.forEach(
+                    depart -> {
+                        if (Objects.equals(depart.getStatus(), StatusEnum.LIVE.getCode())) {
+                            liveDeparts.add(depart);
+                        } else {
+                            removedDeptCodes.add(depart.getBmdm());
+                        }
+                    });
+            List<UserVo> liveUsers = new ArrayList<>();
+            Set<String> removedUids = new HashSet<>();
+            String liveUserStatus = String.valueOf(ConstantCommon.OPERATION_RESULT_FAILED);
+            changedUsers.forEach(
+                    user -> {
+                        if (liveUserStatus.equals(user.getStatus())) {
+                            liveUsers.add(UserVo.from(user));
+                        } else {
+                            removedUids.add(user.getUid());
+                        }
+                    });
+            OrgSearchSnapshot next =
+                    snapshot.withChanges(
+                            snapshot.getVersion() + 1,
+                            liveDeparts,
+                            removedDeptCodes,
+                            liveUsers,
+                            removedUids);
+            current.set(next);
+            lastLoadTime = start;
+            metrics.recordRefresh(OrgSearchMetrics.REFRESH_CHANGES, System.currentTimeMillis() - start, true);
+            log.info(
+                    "组织架构搜索快照增量刷新完成，版本：{}，变更部门：{}，变更人员：{}，耗时：{}ms",
+                    next.getVersion(),
+                    changedDeparts.size(),
+                    changedUsers.size(),
+                    System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            metrics.recordRefresh(OrgSearchMetrics.REFRESH_CHANGES, System.currentTimeMillis() - start, false);
+            log.error("组织架构搜索快照增量刷新失败，继续使用版本：{}", snapshot.getVersion(), e);
+        }
+    }
+
+    /** 从数据库加载更新时间不早于 since 的部门，包含已停用的部门 */
+    private List<AsDepart> loadChangedDeparts(Date since) {
+        Example deptEx = new Example(AsDepart.class);
+        deptEx.createCriteria().andGreaterThanOrEqualTo("updateTime", since);
+        return departMapper.selectByExample(deptEx);
+    }
+
+    /** 从数据库加载更新时间不早于 since 的人员，包含已离职的人员 */
+    private List<UserPwd> loadChangedUsers(Date since) {
+        Example example = new Example(UserPwd.class);
+        example.createCriteria().andGreaterThanOrEqualTo("updateTime", since);
+        return userPwdDao.selectByExample(example);
+    }
+
+    /** 从数据库加载全部在用部门 */
+    private List<AsDepart> loadLiveDeparts() {
+        Example deptEx = new Example(AsDepart.class);
+        deptEx.createCriteria().andEqualTo(ConstantCommon.STATUS, StatusEnum.LIVE.getCode());
+        return departMapper.selectByExample(deptEx);
+    }
+
+    /** 从数据库加载全部在职人员 */
+    private List<UserVo> loadLiveUsers() {
+        Example example = new Example(UserPwd.class);
+        example.createCriteria()
+                .andEqualTo("status", String.valueOf(ConstantCommon.OPERATION_RESULT_FAILED));
+        List<UserPwd> userPwdList = userPwdDao.selectByExample(example);
+        return userPwdList.parallelStream().map(UserVo::from).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,232 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.domain.entity.user.AsDepart;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 组织架构搜索快照文件。
+ * <p>
+ * 全量构建完成后把部门、人员记录和三棵基础搜索树写入本地文件，重启时映射该文件直接恢复，
+ * 跳过数据库全量加载、拼音转换和后缀排序，启动后即可提供搜索，随后由定时任务在后台增量追平并全量重建。
+ * <p>
+ * 文件格式：魔数、格式版本、快照版本、数据加载时间，随后依次为部门、人员（{@link ColumnarListCodec} 编码）
+ * 以及 uid、姓名、部门名称三棵搜索树。格式版本不一致或文件过旧时不使用。
+ * <p>
+ * 恢复出的搜索树直接读取映射的文件内容，不复制到堆内。保存时写入新文件后替换，
+ * 已映射的旧文件在被替换后仍然有效，直到引用它的快照被回收。
+ * <p>
+ * 文件包含全部人员信息，且恢复时直接映射使用，因此只放在显式配置的目录中：
+ * 支持 POSIX 权限的文件系统上，目录只允许属主访问，文件只允许属主读写（rw-------），
+ * 临时文件在同一目录下以随机名称创建后原子替换；组或其他用户有权限的文件不会被恢复。
+ */
+@Slf4j
+public class OrgSearchSnapshotStore {
+
+    private static final int MAGIC = 0x4F524753;
+
+    private static final int FORMAT_VERSION = 2;
+
+    private static final String FILE_NAME = "org-search-snapshot.bin";
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_DIRECTORY = PosixFilePermissions.fromString("rwx------");
+
+    private static final Set<PosixFilePermission> OWNER_ONLY_FILE = PosixFilePermissions.fromString("rw-------");
+
+    private final Path directory;
+
+    private final Path path;
+
+    private final long maxAgeMillis;
+
+    private final ColumnarListCodec<AsDepart> departCodec;
+
+    private final ColumnarListCodec<UserVo> userCodec;
+
+    /**
+     * @param directory    快照文件所在目录，不存在时创建
+     * @param maxAgeMillis 数据加载时间距今超过该值的文件不再使用
+     */
+    public OrgSearchSnapshotStore(Path directory, long maxAgeMillis) {
+        this.directory = directory.toAbsolutePath();
+        this.path = this.directory.resolve(FILE_NAME);
+        this.maxAgeMillis = maxAgeMillis;
+        this.departCodec = ColumnarListCodec.tryCreate(AsDepart.class);
+        this.userCodec = ColumnarListCodec.tryCreate(UserVo.class);
+        if (!isEnabled()) {
+            log.warn("部门或人员不支持紧凑编码，不保存组织架构搜索快照文件");
+        }
+    }
+
+    /**
+     * 从快照文件恢复出的快照及其数据加载时间
+     */
+    public static final class Stored {
+
+        private final OrgSearchSnapshot snapshot;
+
+        private final long loadTime;
+
+        private Stored(OrgSearchSnapshot snapshot, long loadTime) {
+            this.snapshot = snapshot;
+            this.loadTime = loadTime;
+        }
+
+        public OrgSearchSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        public long getLoadTime() {
+            return loadTime;
+        }
+    }
+
+    public boolean isEnabled() {
+        return departCodec != null && userCodec != null;
+    }
+
+    /**
+     * 保存快照：先在同一目录写只有属主可读写的临时文件再原子替换，写入过程中崩溃不会留下半个文件
+     *
+     * @param snapshot 不含增量变更的全量快照
+     * @param loadTime 快照数据从数据库加载的开始时间
+     */
+    public void save(OrgSearchSnapshot snapshot, long loadTime) {
+        if (!isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Path tmp = null;
+        try {
+            tmp = createTempFile();
+            OrgSearchRecords records = snapshot.getRecords();
+            try (DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(snapshot.getVersion());
+                out.writeLong(loadTime);
+                writeBytes(out, departCodec.encode(new ArrayList<>(records.getDeptMap().values())));
+                writeBytes(out, userCodec.encode(records.getUsers()));
+                snapshot.getUidTree().writeTo(out);
+                snapshot.getNameTree().writeTo(out);
+                snapshot.getDeptNameTree().writeTo(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info(
+                    "组织架构搜索快照文件已保存，版本：{}，大小：{}字节，耗时：{}ms",
+                    snapshot.getVersion(),
+                    Files.size(path),
+                    System.currentTimeMillis() - start);
+        } catch (IOException | RuntimeException e) {
+            log.warn("组织架构搜索快照文件保存失败：{}", path, e);
+            deleteQuietly(tmp);
+        }
+    }
+
+    /**
+     * 在快照目录下创建随机名称的临时文件，目录与文件都只允许属主访问
+     */
+    private Path createTempFile() throws IOException {
+        if (!isPosix()) {
+            Files.createDirectories(directory);
+            return Files.createTempFile(directory, FILE_NAME, ".tmp");
+        }
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY_DIRECTORY));
+        }
+        FileAttribute<Set<PosixFilePermission>> fileAttribute = PosixFilePermissions.asFileAttribute(OWNER_ONLY_FILE);
+        Path tmp = Files.createTempFile(directory, FILE_NAME, ".tmp", fileAttribute);
+        // 创建时的权限受 umask 影响，再显式设置一次
+        Files.setPosixFilePermissions(tmp, OWNER_ONLY_FILE);
+        return tmp;
+    }
+
+    private boolean isPosix() {
+        return directory.getFileSystem().supportedFileAttributeViews().contains("posix");
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(tmp);
+        } catch (IOException e) {
+            log.warn("组织架构搜索快照临时文件删除失败：{}", tmp, e);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * 映射快照文件并恢复快照
+     *
+     * @return 恢复的快照，文件不存在、格式不符或已过旧时为 null
+     */
+    public Stored load() {
+        if (!isEnabled() || !Files.isRegularFile(path)) {
+            return null;
+        }
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (isPosix() && !OWNER_ONLY_FILE.containsAll(Files.getPosixFilePermissions(path))) {
+                log.warn("组织架构搜索快照文件对组或其他用户开放了权限，忽略：{}", path);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                log.info("组织架构搜索快照文件格式不符，忽略：{}", path);
+                return null;
+            }
+            long version = buffer.getLong();
+            long loadTime = buffer.getLong();
+            if (System.currentTimeMillis() - loadTime > maxAgeMillis) {
+                log.info("组织架构搜索快照文件已过旧，忽略，数据加载时间：{}", loadTime);
+                return null;
+            }
+            List<AsDepart> departs = departCodec.decode(readBytes(buffer));
+            List<UserVo> users = userCodec.decode(readBytes(buffer));
+            FuzzySearchTree uidTree = FuzzySearchTree.readFrom(buffer);
+            FuzzySearchTree nameTree = FuzzySearchTree.readFrom(buffer);
+            FuzzySearchTree deptNameTree = FuzzySearchTree.readFrom(buffer);
+            OrgSearchSnapshot snapshot =
+                    OrgSearchSnapshot.restore(version, departs, users, uidTree, nameTree, deptNameTree);
+            log.info(
+                    "组织架构搜索快照已从文件恢复，版本：{}，部门：{}，人员：{}，耗时：{}ms",
+                    version,
+                    departs.size(),
+                    users.size(),
+                    System.currentTimeMillis() - start);
+            return new Stored(snapshot, loadTime);
+        } catch (IOException | RuntimeException e) {
+            log.warn("组织架构搜索快照文件读取失败，忽略：{}", path, e);
+            return null;
+        }
+    }
+
+    private static byte[] readBytes(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,142 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sourceforge.pinyin4j.PinyinHelper;
+import net.sourceforge.pinyin4j.format.HanyuPinyinCaseType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinOutputFormat;
+import net.sourceforge.pinyin4j.format.HanyuPinyinToneType;
+import net.sourceforge.pinyin4j.format.HanyuPinyinVCharType;
+import net.sourceforge.pinyin4j.format.exception.BadHanyuPinyinOutputFormatCombination;
+
+import java.util.*;
+
+/**
+ * 预先计算的汉字拼音表。
+ * <p>
+ * 首次使用时把基本汉字区（一-龥）每个字的全部读音（去声调、小写、ü 写作 v、去重）一次性查出，
+ * 之后按字符下标直接取，不再每个字符编译正则、每个词创建输出格式。
+ */
+@Slf4j
+public final class PinyinTable {
+
+    private static final char FIRST = '一';
+
+    private static final char LAST = '龥';
+
+    /**
+     * 下标为 ch - FIRST，值为该字的全部读音，常用读音在前；查不到读音时为 null
+     */
+    private static final String[][] READINGS = load();
+
+    private PinyinTable() {
+    }
+
+    private static String[][] load() {
+        long start = System.currentTimeMillis();
+        HanyuPinyinOutputFormat outputFormat = new HanyuPinyinOutputFormat();
+        outputFormat.setCaseType(HanyuPinyinCaseType.LOWERCASE);
+        outputFormat.setToneType(HanyuPinyinToneType.WITHOUT_TONE);
+        outputFormat.setVCharType(HanyuPinyinVCharType.WITH_V);
+        String[][] readings = new String[LAST - FIRST + 1][];
+        int polyphones = 0;
+        for (char ch = FIRST; ch <= LAST; ch++) {
+            try {
+                String[] pinyinArray = PinyinHelper.toHanyuPinyinStringArray(ch, outputFormat);
+                if (pinyinArray != null && pinyinArray.length > 0) {
+                    // 去掉声调后不同声调的读音会重复
+                    String[] distinct = new LinkedHashSet<>(Arrays.asList(pinyinArray)).toArray(new String[0]);
+                    readings[ch - FIRST] = distinct;
+                    if (distinct.length > 1) {
+                        polyphones++;
+                    }
+                }
+            } catch (BadHanyuPinyinOutputFormatCombination e) {
+                log.error("拼音输出格式错误", e);
+                break;
+            }
+        }
+        log.info("拼音表加载完成，多音字：{}，耗时：{}ms", polyphones, System.currentTimeMillis() - start);
+        return readings;
+    }
+
+    /**
+     * 获取汉字的全部读音
+     *
+     * @param ch 字符
+     * @return 读音，常用读音在前；不是汉字或查不到读音时为 null
+     */
+    public static String[] readingsOf(char ch) {
+        return ch >= FIRST && ch <= LAST ? READINGS[ch - FIRST] : null;
+    }
+
+    /**
+     * 将名称转换为拼音，每个汉字取第一个读音，其他字符原样保留
+     *
+     * @param word 名称
+     * @return 拼音字符串
+     */
+    public static String toPinyin(String word) {
+        StringBuilder pinyin = new StringBuilder(word.length() * 4);
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            String[] readings = readingsOf(ch);
+            if (readings != null) {
+                pinyin.append(readings[0]);
+            } else if (ch < FIRST || ch > LAST) {
+                pinyin.append(ch);
+            }
+        }
+        return pinyin.toString();
+    }
+
+    /**
+     * 生成名称的全拼与首字母写法，多音字按读音组合展开。
+     * <p>
+     * 组合按字的先后展开，靠前的字（如姓氏）的读音先被覆盖；组合数达到 maxCombinations 后
+     * 后面的字只取第一个读音，保证每个名称收录的写法有上限。
+     *
+     * @param word            名称
+     * @param maxCombinations 最多展开的读音组合数
+     * @return 全拼在前、首字母在后的写法，去重，不包含名称本身
+     */
+    public static Set<String> variantsOf(String word, int maxCombinations) {
+        List<StringBuilder> fulls = new ArrayList<>();
+        List<StringBuilder> initials = new ArrayList<>();
+        fulls.add(new StringBuilder());
+        initials.add(new StringBuilder());
+        boolean hasChinese = false;
+        for (int i = 0; i < word.length(); i++) {
+            char ch = word.charAt(i);
+            String[] readings = readingsOf(ch);
+            if (readings == null) {
+                if (ch < FIRST || ch > LAST) {
+                    String text = String.valueOf(ch);
+                    fulls.forEach(full -> full.append(text));
+                    initials.forEach(initial -> initial.append(text));
+                }
+                continue;
+            }
+            hasChinese = true;
+            int size = fulls.size();
+            int count = Math.min(readings.length, Math.max(1, maxCombinations / size));
+            for (int r = 1; r < count; r++) {
+                for (int j = 0; j < size; j++) {
+                    fulls.add(new StringBuilder(fulls.get(j)).append(readings[r]));
+                    initials.add(new StringBuilder(initials.get(j)).append(readings[r].charAt(0)));
+                }
+            }
+            for (int j = 0; j < size; j++) {
+                fulls.get(j).append(readings[0]);
+                initials.get(j).append(readings[0].charAt(0));
+            }
+        }
+        Set<String> variants = new LinkedHashSet<>();
+        if (!hasChinese) {
+            return variants;
+        }
+        fulls.forEach(full -> variants.add(full.toString()));
+        initials.forEach(initial -> variants.add(initial.toString()));
+        variants.remove(word);
+        return variants;
+    }
+}
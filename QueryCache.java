@@ -0,0 +1,169 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 单棵搜索树的查询缓存，面向逐字输入的联想搜索。
+ * <p>
+ * 只缓存命中名称不超过 {@link #MAX_CACHED_WORDS} 个的查询，值为完整的命中集合（不受 limit 截断），
+ * 即按相关度排好序的排序 key，低 32 位为名称序号，相同查询直接取前 limit 个。
+ * 查询串延长时命中集合只会缩小，因此“zh”的完整命中集合过滤后就是“zha”的命中集合，不必再查索引。
+ * 搜索树不可变，缓存随搜索树一起被替换，不会读到旧快照的数据。
+ * <p>
+ * 基于 ConcurrentHashMap，读写都不加锁，并发的逐字输入互不阻塞。按最近使用近似淘汰：
+ * 每次命中记下访问时间，条目数超出容量 1/8 后由一个线程批量淘汰最久未使用的条目，
+ * 其他线程不等待，淘汰期间条目数可能短暂超出容量，最多约为容量的两倍。
+ */
+final class QueryCache {
+
+    /**
+     * 命中名称数不超过该值的查询才缓存
+     */
+    static final int MAX_CACHED_WORDS = 256;
+
+    /**
+     * 每棵搜索树最多缓存的查询数
+     */
+    private static final int CAPACITY = 1024;
+
+    /**
+     * 超出容量多少条后触发一次批量淘汰
+     */
+    private static final int EVICTION_SLACK = CAPACITY / 8;
+
+    /**
+     * 查找可复用的前缀时最多回退的字符数，覆盖输入较快时一次多出几个字符的情况
+     */
+    private static final int MAX_PREFIX_LOOKBACK = 4;
+
+    /**
+     * 所有搜索树共用的统计：完全命中、前缀复用、未命中
+     */
+    static final LongAdder HITS = new LongAdder();
+
+    static final LongAdder PREFIX_HITS = new LongAdder();
+
+    static final LongAdder MISSES = new LongAdder();
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>(CAPACITY * 2);
+
+    /**
+     * 同一时刻只有一个线程执行淘汰
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private static final class Entry {
+
+        final long[] ids;
+
+        /**
+         * 最近一次访问的时间，并发更新时保留任意一次即可
+         */
+        volatile long accessTime;
+
+        Entry(long[] ids) {
+            this.ids = ids;
+            this.accessTime = System.nanoTime();
+        }
+    }
+
+    /**
+     * 查找查询串本身的缓存
+     *
+     * @param query 小写后的查询串
+     * @return 完整的命中集合，没有缓存时为 null
+     */
+    long[] get(String query) {
+        long[] ids = lookup(query);
+        if (ids != null) {
+            HITS.increment();
+        }
+        return ids;
+    }
+
+    /**
+     * 查找查询串最长的已缓存前缀，{@link #get} 未命中后调用
+     *
+     * @param query 小写后的查询串
+     * @return 前缀的完整命中集合，是查询串命中集合的超集；没有可用前缀时为 null
+     */
+    long[] getPrefix(String query) {
+        int shortest = Math.max(1, query.length() - MAX_PREFIX_LOOKBACK);
+        for (int length = query.length() - 1; length >= shortest; length--) {
+            long[] ids = lookup(query.substring(0, length));
+            if (ids != null) {
+                PREFIX_HITS.increment();
+                return ids;
+            }
+        }
+        MISSES.increment();
+        return null;
+    }
+
+    /**
+     * 缓存查询串的完整命中集合，超过 {@link #MAX_CACHED_WORDS} 时不缓存
+     *
+     * @param query 小写后的查询串
+     * @param ids   完整的命中集合
+     */
+    void put(String query, long[] ids) {
+        if (ids.length > MAX_CACHED_WORDS) {
+            return;
+        }
+        entries.put(query, new Entry(ids));
+        int size = entries.size();
+        if (size <= CAPACITY + EVICTION_SLACK) {
+            return;
+        }
+        // 淘汰线程被挂起时其他线程不等待；超出一倍容量后才等待，限制条目数的上界
+        if (size > CAPACITY * 2) {
+            evictionLock.lock();
+        } else if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private long[] lookup(String query) {
+        Entry entry = entries.get(query);
+        if (entry == null) {
+            return null;
+        }
+        entry.accessTime = System.nanoTime();
+        return entry.ids;
+    }
+
+    /**
+     * 淘汰最久未使用的条目，使条目数回到容量以内。
+     * 以访问时间的第 (条目数 - 容量) 小值为界，不晚于该时间的条目全部移除。
+     */
+    private void evict() {
+        long[] accessTimes = new long[entries.size() + EVICTION_SLACK];
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            if (size == accessTimes.length) {
+                break;
+            }
+            accessTimes[size++] = entry.accessTime;
+        }
+        int excess = size - CAPACITY;
+        if (excess <= 0) {
+            return;
+        }
+        Arrays.sort(accessTimes, 0, size);
+        long threshold = accessTimes[excess - 1];
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            if (it.next().accessTime <= threshold) {
+                it.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.common.RedisCommon;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Redis 缓存前的进程内副本。
+ * <p>
+ * 数据键旁边维护一个版本号键，每次写入新数据时更新。读取时只取很小的版本号，
+ * 与本地副本的版本一致就直接返回本地副本，只有版本变化（或本地副本超过最长保留时间）时才从 Redis 读取整份数据。
+ * 最长保留时间用于兜底其他模块直接写数据键而不更新版本号的情况。
+ * <p>
+ * 防止缓存击穿：
+ * <ul>
+ *     <li>同一时刻只有一个线程从数据库加载，其余线程等待同一个加载结果；</li>
+ *     <li>版本号中带有写入时间，临近过期时按概率提前在后台刷新，越接近过期概率越大；</li>
+ *     <li>Redis 中数据已过期但本地还有副本时，先返回旧副本，同时在后台加载。</li>
+ * </ul>
+ * 因此过期后每个实例最多只查询一次数据库。
+ * <p>
+ * 本地副本会被多个请求线程共享，调用方不得修改。
+ * <p>
+ * 指定编码方式时，编码后的字节通过键、值都不做序列化的 {@link #bytesTemplate} 原样读写，
+ * 不经过 RedisCommon 的序列化器：JSON 一类的序列化器不能保证 byte[] 原样读回，读不回来会导致每次都重新加载。
+ *
+ * @param <T> 缓存的数据类型
+ */
+@Slf4j
+public class RedisNearCache<T> {
+
+    /**
+     * 版本号键的后缀
+     */
+    private static final String VERSION_SUFFIX = ":version";
+
+    /**
+     * 版本号格式：写入时间毫秒数 + 分隔符 + 随机串
+     */
+    private static final String VERSION_SEPARATOR = "_";
+
+    /**
+     * 本地副本最长保留时间
+     */
+    private static final long LOCAL_MAX_AGE_MILLIS = 1000 * 60 * 5;
+
+    /**
+     * 提前刷新的系数，越大越早刷新
+     */
+    private static final double EARLY_REFRESH_BETA = 1.0;
+
+    /**
+     * 还没有加载过时估计的加载耗时
+     */
+    private static final long DEFAULT_LOAD_MILLIS = 1000;
+
+    /**
+     * 读取数据前后版本号不一致时最多读取的次数
+     */
+    private static final int MAX_READ_ATTEMPTS = 3;
+
+    private static final ExecutorService REFRESH_EXECUTOR =
+            Executors.newSingleThreadExecutor(
+                    runnable -> {
+                        Thread thread = new Thread(runnable, "redis-near-cache-refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    private final RedisCommon redisCommon;
+
+    private final String key;
+
+    private final String versionKey;
+
+    private final long expireTime;
+
+    private final Supplier<T> loader;
+
+    /**
+     * 写入 Redis 前的编码方式，为 null 时直接交给 RedisCommon 序列化
+     */
+    private final Codec<T> codec;
+
+    /**
+     * 读写编码后的数据，不指定编码方式时为 null
+     */
+    private final RedisTemplate<String, byte[]> bytesTemplate;
+
+    private volatile LocalCopy<T> local;
+
+    /**
+     * 正在进行的加载，没有时为 null
+     */
+    private final AtomicReference<CompletableFuture<T>> loading = new AtomicReference<>();
+
+    /**
+     * 是否已提交后台刷新
+     */
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    /**
+     * 最近一次从数据库加载的耗时
+     */
+    private volatile long loadMillis = DEFAULT_LOAD_MILLIS;
+
+    /**
+     * @param redisCommon redis 操作类
+     * @param key         数据键
+     * @param expireTime  数据键过期时间，单位秒
+     * @param loader      Redis 中没有数据时从数据库加载
+     */
+    public RedisNearCache(RedisCommon redisCommon, String key, long expireTime, Supplier<T> loader) {
+        this(redisCommon, key, expireTime, loader, null, null);
+    }
+
+    /**
+     * @param redisCommon   redis 操作类，用于读写版本号
+     * @param key           数据键，编码后的格式与 RedisCommon 序列化的格式不同，不要与原来的键共用
+     * @param expireTime    数据键过期时间，单位秒
+     * @param loader        Redis 中没有数据时从数据库加载
+     * @param codec         写入 Redis 前的编码方式
+     * @param bytesTemplate 读写编码后的数据，见 {@link #bytesTemplate(RedisConnectionFactory)}
+     */
+    public RedisNearCache(
+            RedisCommon redisCommon,
+            String key,
+            long expireTime,
+            Supplier<T> loader,
+            Codec<T> codec,
+            RedisTemplate<String, byte[]> bytesTemplate) {
+        if ((codec == null) != (bytesTemplate == null)) {
+            throw new IllegalArgumentException("编码方式与 bytesTemplate 需要同时指定");
+        }
+        this.redisCommon = redisCommon;
+        this.key = key;
+        this.versionKey = key + VERSION_SUFFIX;
+        this.expireTime = expireTime;
+        this.loader = loader;
+        this.codec = codec;
+        this.bytesTemplate = bytesTemplate;
+    }
+
+    /**
+     * 创建读写编码后数据的 RedisTemplate：键按字符串写入，值为字节数组原样写入
+     *
+     * @param connectionFactory redis 连接工厂
+     * @return RedisTemplate
+     */
+    public static RedisTemplate<String, byte[]> bytesTemplate(RedisConnectionFactory connectionFactory) {
+        RedisTemplate<String, byte[]> template = new RedisTemplate<>();
+        template.setConnectionFactory(connectionFactory);
+        template.setKeySerializer(RedisSerializer.string());
+        template.setValueSerializer(RedisSerializer.byteArray());
+        template.afterPropertiesSet();
+        return template;
+    }
+
+    /**
+     * 数据写入 Redis 前的编码方式
+     *
+     * @param <T> 数据类型
+     */
+    public interface Codec<T> {
+
+        byte[] encode(T value);
+
+        T decode(byte[] bytes);
+    }
+
+    /**
+     * 本地副本及其对应的 Redis 版本号
+     */
+    private static final class LocalCopy<T> {
+
+        final T value;
+
+        final Object version;
+
+        final long loadTime;
+
+        LocalCopy(T value, Object version) {
+            this.value = value;
+            this.version = version;
+            this.loadTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 获取数据：版本号未变化时返回本地副本，否则读取 Redis；
+     * Redis 中没有时有本地副本先返回副本并在后台加载，没有副本才等待加载完成
+     * <p>
+     * 读取数据后再读一次版本号，前后一致才把数据连同版本号保存为本地副本；
+     * 期间有其他实例写入新数据时重新读取，多次仍不一致则只返回本次读到的数据，不保存副本。
+     *
+     * @return 数据，调用方不得修改
+     */
+    public T get() {
+        Object version = redisCommon.get(versionKey);
+        LocalCopy<T> copy = local;
+        if (copy != null
+                && Objects.equals(copy.version, version)
+                && System.currentTimeMillis() - copy.loadTime < LOCAL_MAX_AGE_MILLIS) {
+            if (shouldRefreshEarly(copy)) {
+                refreshAsync();
+            }
+            return copy.value;
+        }
+        T value = readValue();
+        for (int attempt = 1; value != null; attempt++) {
+            Object versionAfterRead = redisCommon.get(versionKey);
+            if (Objects.equals(version, versionAfterRead)) {
+                local = new LocalCopy<>(value, version);
+                return value;
+            }
+            if (attempt >= MAX_READ_ATTEMPTS) {
+                log.warn("{}缓存读取期间版本号持续变化，本次不保存本地副本", key);
+                return value;
+            }
+            version = versionAfterRead;
+            value = readValue();
+        }
+        if (copy != null) {
+            refreshAsync();
+            return copy.value;
+        }
+        return reload();
+    }
+
+    /**
+     * 从数据库加载数据，写入 Redis 并更新版本号，其他实例在下次读取时发现版本变化。
+     * 已有线程在加载时不再重复查询数据库，直接等待该线程的结果。
+     *
+     * @return 新数据
+     */
+    public T reload() {
+        while (true) {
+            CompletableFuture<T> running = loading.get();
+            if (running != null) {
+                return join(running);
+            }
+            CompletableFuture<T> future = new CompletableFuture<>();
+            if (loading.compareAndSet(null, future)) {
+                try {
+                    T value = loadAndPublish();
+                    future.complete(value);
+                    return value;
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    loading.set(null);
+                }
+            }
+        }
+    }
+
+    private T loadAndPublish() {
+        long start = System.currentTimeMillis();
+        T value = loader.get();
+        String version = start + VERSION_SEPARATOR + UUID.randomUUID();
+        if (codec == null) {
+            redisCommon.set(key, value, expireTime);
+        } else {
+            bytesTemplate.opsForValue().set(key, codec.encode(value), expireTime, TimeUnit.SECONDS);
+        }
+        redisCommon.set(versionKey, version, expireTime);
+        local = new LocalCopy<>(value, version);
+        loadMillis = System.currentTimeMillis() - start;
+        log.info("{}缓存已重新加载，版本：{}，耗时：{}ms", key, version, loadMillis);
+        return value;
+    }
+
+    /**
+     * 读取 Redis 中的数据，无法解码时视为没有数据，随后重新加载覆盖
+     */
+    private T readValue() {
+        if (codec == null) {
+            return redisCommon.get(key);
+        }
+        byte[] raw = bytesTemplate.opsForValue().get(key);
+        if (raw == null) {
+            return null;
+        }
+        try {
+            return codec.decode(raw);
+        } catch (RuntimeException e) {
+            log.warn("{}缓存解码失败，重新加载", key, e);
+            return null;
+        }
+    }
+
+    private T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在后台加载，已提交的刷新未完成时不重复提交
+     */
+    private void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        REFRESH_EXECUTOR.execute(
+                () -> {
+                    try {
+                        reload();
+                    } catch (Exception e) {
+                        log.error("{}缓存后台刷新失败，继续使用本地副本", key, e);
+                    } finally {
+                        refreshing.set(false);
+                    }
+                });
+    }
+
+    /**
+     * 概率提前刷新：now - 加载耗时 * beta * ln(random) 越过过期时间时刷新，
+     * 随机数取对数为负，越接近过期、加载越慢，提前刷新的概率越大
+     */
+    private boolean shouldRefreshEarly(LocalCopy<T> copy) {
+        long writeTime = writeTimeOf(copy.version);
+        if (writeTime <= 0) {
+            return false;
+        }
+        long expireAt = writeTime + expireTime * 1000;
+        double gap = -loadMillis * EARLY_REFRESH_BETA * Math.log(ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expireAt;
+    }
+
+    /**
+     * 从版本号中取出写入时间，版本号不是本类写入的格式时返回 0
+     */
+    private static long writeTimeOf(Object version) {
+        if (!(version instanceof String)) {
+            return 0;
+        }
+        String value = (String) version;
+        int separator = value.indexOf(VERSION_SEPARATOR);
+        if (separator <= 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value.substring(0, separator));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
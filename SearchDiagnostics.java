@@ -0,0 +1,140 @@
+package com.cestc.dc.apihandler.deptTree;
+
+import com.cestc.dc.repository.domain.entity.user.DeptPersonVO;
+import com.cestc.dc.repository.domain.entity.user.UserVo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 单次搜索请求的诊断信息。
+ * <p>
+ * 只有请求带诊断请求头或被抽样命中时才开启，结束时输出一行日志：关键字、命中数、各阶段耗时，
+ * 以及前几条命中作为样例。未开启时使用 {@link #DISABLED}，各方法直接返回，不拼接、不序列化任何内容。
+ */
+@Slf4j
+public final class SearchDiagnostics {
+
+    /**
+     * 未开启诊断时使用的实例
+     */
+    public static final SearchDiagnostics DISABLED = new SearchDiagnostics(null, 0, false);
+
+    /**
+     * 样例最多输出的条数
+     */
+    private static final int SAMPLE_SIZE = 5;
+
+    private final String keyword;
+
+    private final int limit;
+
+    private final boolean enabled;
+
+    private final long start;
+
+    private long phaseStart;
+
+    private int departmentCount;
+
+    private long departmentNanos;
+
+    private String departmentSample = "";
+
+    private int userCount;
+
+    private long userNanos;
+
+    private String userSample = "";
+
+    private SearchDiagnostics(String keyword, int limit, boolean enabled) {
+        this.keyword = keyword;
+        this.limit = limit;
+        this.enabled = enabled;
+        this.start = enabled ? System.nanoTime() : 0;
+        this.phaseStart = start;
+    }
+
+    /**
+     * 开启诊断
+     *
+     * @param keyword 查询的关键字
+     * @param limit   最大返回条数
+     * @return 诊断信息
+     */
+    static SearchDiagnostics enabled(String keyword, int limit) {
+        return new SearchDiagnostics(keyword, limit, true);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录部门查找结果及耗时
+     *
+     * @param departments 命中的部门
+     */
+    public void departments(List<DeptPersonVO> departments) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        departmentNanos = now - phaseStart;
+        phaseStart = now;
+        departmentCount = departments.size();
+        departmentSample =
+                departments.stream()
+                        .limit(SAMPLE_SIZE)
+                        .map(dept -> dept.getBmdm() + ":" + dept.getBmmc())
+                        .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * 记录人员查找结果及耗时
+     *
+     * @param users 命中的人员
+     */
+    public void users(List<UserVo> users) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        userNanos = now - phaseStart;
+        phaseStart = now;
+        userCount = users.size();
+        userSample =
+                users.stream()
+                        .limit(SAMPLE_SIZE)
+                        .map(user -> user.getUid() + ":" + user.getDisplayName())
+                        .collect(Collectors.joining(",", "[", "]"));
+    }
+
+    /**
+     * 搜索结束，输出诊断日志
+     *
+     * @param nodeCount 拼装出的部门树节点数
+     */
+    public void finish(int nodeCount) {
+        if (!enabled) {
+            return;
+        }
+        long now = System.nanoTime();
+        log.info(
+                "搜索诊断：keyword={}，limit={}，部门={}，人员={}，节点={}，部门耗时={}us，人员耗时={}us，"
+                        + "拼装耗时={}us，总耗时={}us，部门样例={}，人员样例={}",
+                keyword,
+                limit,
+                departmentCount,
+                userCount,
+                nodeCount,
+                TimeUnit.NANOSECONDS.toMicros(departmentNanos),
+                TimeUnit.NANOSECONDS.toMicros(userNanos),
+                TimeUnit.NANOSECONDS.toMicros(now - phaseStart),
+                TimeUnit.NANOSECONDS.toMicros(now - start),
+                departmentSample,
+                userSample);
+    }
+}